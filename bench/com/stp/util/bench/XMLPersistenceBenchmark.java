@@ -0,0 +1,274 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util.bench;
+import com.stp.util.JavaIO;
+import com.stp.util.XMLBinaryFormat;
+import com.stp.util.XMLChunkReader;
+import com.stp.util.XMLFileIndex;
+import com.stp.util.XMLFileUtility;
+import com.stp.util.XMLObject;
+import com.stp.util.XMLQuery;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Locale;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created an offline benchmark for the xml and binary save and load paths ~ 10/19/2026
+ *
+ *  Usage: XMLPersistenceBenchmark [max objects] [runs] [work directory]
+ *  Generates synthetic datasets at 1K, 10K, 100K, 1M and 10M objects up to the maximum, in three value mixes, and
+ *  reports the best of the measured runs for each strategy along with the bytes allocated on the calling thread
+ *  and the peak heap. Allocation in worker threads (the chunked reader) is not included.
+ */
+public class XMLPersistenceBenchmark {
+	private static final int[] SIZES = { 1000, 10000, 100000, 1000000, 10000000 };
+	private static final String[] MIXES = { "numeric", "text", "entities" };
+	
+	/** A fixed shape record so results are not skewed by the linear lookups in Configuration.DataStore */
+	public static class Record implements XMLObject {
+		private static final String[] NAMES = { "id", "count", "amount", "active", "name", "note" };
+		private int id;
+		private long count;
+		private double amount;
+		private boolean active;
+		private String name;
+		private String note;
+		
+		public Record() {
+		}
+		public int getPropertyCount() {
+			return NAMES.length;
+		}
+		public String getPropertyName(int index) {
+			return (index >= 0 && index < NAMES.length) ? NAMES[index] : "none";
+		}
+		public Object getProperty(String key) {
+			switch (key) {
+				case "id": return id;
+				case "count": return count;
+				case "amount": return amount;
+				case "active": return active;
+				case "name": return name;
+				case "note": return note;
+				default: return null;
+			}
+		}
+		public void setProperty(String key, Object value, String valueClass) {
+			switch (key) {
+				case "id": id = (Integer)value; return;
+				case "count": count = (Long)value; return;
+				case "amount": amount = (Double)value; return;
+				case "active": active = (Boolean)value; return;
+				case "name": name = value.toString(); return;
+				case "note": note = value.toString(); return;
+				default: return;
+			}
+		}
+	}
+	
+	private interface Task {
+		public abstract long run() throws Exception;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int maxSize = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		File dir = (args.length > 2) ? new File(args[2]) : new File(System.getProperty("java.io.tmpdir"), "stp-bench");
+		dir.mkdirs();
+		System.out.println(String.format(Locale.US, "%-9s %-9s %-6s %-10s %10s %12s %9s %11s %10s", "objects", "mix", "op", "strategy", "ms", "objects/s", "MB/s", "alloc MB", "peak MB"));
+		for (int size : SIZES) {
+			if (size > maxSize) {
+				break;
+			}
+			for (String mix : MIXES) {
+				benchmark(dir, size, mix, runs);
+			}
+		}
+	}
+	private static void benchmark(File dir, final int size, String mix, int runs) throws Exception {
+		final XMLObject[] records = generate(size, mix);
+		final File xml = new File(dir, "bench-" + size + "-" + mix + ".xml");
+		final File bin = new File(dir, "bench-" + size + "-" + mix + ".bin");
+		final File saved = new File(dir, "bench-" + size + "-" + mix + "-javaio.xml");
+		
+		measure(size, mix, "write", "xml", runs, xml, new Task() {
+			public long run() throws Exception {
+				XMLFileUtility.saveXMLObjects(new BufferedOutputStream(new FileOutputStream(xml)), records);
+				return records.length;
+			}
+		});
+		measure(size, mix, "write", "binary", runs, bin, new Task() {
+			public long run() throws Exception {
+				XMLBinaryFormat.writeObjects(new BufferedOutputStream(new FileOutputStream(bin)), records);
+				return records.length;
+			}
+		});
+		measure(size, mix, "write", "javaio", runs, saved, new Task() {
+			public long run() throws Exception {
+				if (!JavaIO.saveXML(saved, records)) {
+					throw new Exception("JavaIO.saveXML failed");
+				}
+				return records.length;
+			}
+		});
+		measure(size, mix, "read", "dom", runs, xml, new Task() {
+			public long run() throws Exception {
+				return Array.getLength(read(xml));
+			}
+		});
+		measure(size, mix, "read", "binary", runs, bin, new Task() {
+			public long run() throws Exception {
+				return Array.getLength(read(bin));
+			}
+		});
+		measure(size, mix, "read", "stax", runs, xml, new Task() {
+			public long run() throws Exception {
+				final long[] count = new long[1];
+				InputStream input = new BufferedInputStream(new FileInputStream(xml));
+				try {
+					new XMLQuery().execute(input, new XMLQuery.Listener() {
+						public boolean objectFound(Object object) {
+							count[0]++;
+							return true;
+						}
+					});
+				} finally {
+					input.close();
+				}
+				return count[0];
+			}
+		});
+		measure(size, mix, "read", "chunked", runs, xml, new Task() {
+			public long run() throws Exception {
+				InputStream input = new BufferedInputStream(new FileInputStream(xml));
+				try {
+					return new XMLChunkReader(1000).read(input, new XMLChunkReader.Consumer() {
+						public void consume(List<Object> batch) {
+						}
+					});
+				} finally {
+					input.close();
+				}
+			}
+		});
+		measure(size, mix, "index", "scan", runs, xml, new Task() {
+			public long run() throws Exception {
+				return XMLFileIndex.build(xml, null).size();
+			}
+		});
+		xml.delete();
+		bin.delete();
+		saved.delete();
+	}
+	private static Object read(File file) throws Exception {
+		InputStream input = new FileInputStream(file);
+		try {
+			return XMLFileUtility.readXMLObjects(input);
+		} finally {
+			input.close();
+		}
+	}
+	private static void measure(int size, String mix, String op, String strategy, int runs, File file, Task task) throws Exception {
+		long best = Long.MAX_VALUE;
+		long allocated = 0;
+		long peak = 0;
+		long objects = 0;
+		// one untimed run to warm up the code paths for this strategy
+		task.run();
+		for (int r = 0; r < runs; r++) {
+			System.gc();
+			resetPeakHeap();
+			long allocStart = getAllocatedBytes();
+			long start = System.nanoTime();
+			objects = task.run();
+			long elapsed = System.nanoTime() - start;
+			if (elapsed < best) {
+				best = elapsed;
+				allocated = getAllocatedBytes() - allocStart;
+				peak = getPeakHeap();
+			}
+		}
+		double ms = best / 1000000.0;
+		double seconds = best / 1000000000.0;
+		System.out.println(String.format(Locale.US, "%-9d %-9s %-6s %-10s %10.1f %12.0f %9.1f %11.1f %10.1f", size, mix, op, strategy, ms,
+			objects / seconds, file.length() / seconds / 1048576.0, allocated / 1048576.0, peak / 1048576.0));
+	}
+	private static XMLObject[] generate(int size, String mix) {
+		StringBuilder text = new StringBuilder();
+		if (mix.equals("text")) {
+			for (int c = 0; c < 1024; c++) {
+				text.append((char)('a' + (c % 26)));
+			}
+		} else if (mix.equals("entities")) {
+			for (int c = 0; c < 64; c++) {
+				text.append("<b class=\"x\">R&D</b> ");
+			}
+		}
+		String note = text.toString();
+		XMLObject[] records = new XMLObject[size];
+		for (int i = 0; i < size; i++) {
+			Record record = new Record();
+			record.id = i;
+			record.count = (long)i * 31L;
+			record.amount = i * 0.25;
+			record.active = (i % 2 == 0);
+			record.name = "record-" + i;
+			record.note = mix.equals("numeric") ? "" : note;
+			records[i] = record;
+		}
+		return records;
+	}
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
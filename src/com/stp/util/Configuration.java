@@ -22,17 +22,46 @@
  */
 package com.stp.util;
 import java.io.File;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.Iterator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.Arrays;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 
 /** @author Paul Collins
  *  @version v1.01 ~ 10/25/2008
@@ -43,10 +72,63 @@ public class Configuration {
 	private static final Logger logger = Logger.getLogger(Configuration.class.getName());
 	public static final long serialVersionUID = 1L;
 	
-	private static Configuration instance = null;
+	public static final String DEFAULT = "default";
+	// Independent named configurations, each with its own values, save file and keys
+	private static final ConcurrentHashMap<String, Configuration> instances = new ConcurrentHashMap<String, Configuration>();
+	
+	/** Notified on the watcher thread with the keys added, removed or changed by a reload */
+	public interface ChangeListener {
+		public abstract void configurationChanged(Set<String> keys);
+	}
+	
+	// Reads the remaining bytes of a snapshot buffer as a stream
+	private static class BufferInput extends InputStream {
+		private final ByteBuffer buffer;
+		public BufferInput(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+		public int available() {
+			return buffer.remaining();
+		}
+		public boolean markSupported() {
+			return true;
+		}
+		public void mark(int limit) {
+			buffer.mark();
+		}
+		public void reset() {
+			buffer.reset();
+		}
+	}
+	
+	// Hashed for single lookups and sorted for prefix scans. Writers update single keys in place under the
+	// configuration lock, readers never lock and see each key either before or after its update.
+	private static class ResolvedView {
+		private final ConcurrentHashMap<String, XMLProperty> entries;
+		private final ConcurrentSkipListMap<String, XMLProperty> sorted;
+		private ResolvedView(Map<String, XMLProperty> values) {
+			this.entries = new ConcurrentHashMap<String, XMLProperty>(values);
+			this.sorted = new ConcurrentSkipListMap<String, XMLProperty>(values);
+		}
+	}
 	
 	public static class DataStore implements XMLObject {
+		// properties keeps the save order and positional access, lookup maps each key to its entry in the list
 		public ArrayList<XMLProperty> properties = new ArrayList<XMLProperty>();
+		private final HashMap<String, XMLProperty> lookup = new HashMap<String, XMLProperty>();
+		// Sorted by key for prefix scans, built on the first section query and carried over to copies
+		private volatile TreeMap<String, XMLProperty> sorted = null;
 		public DataStore() {
 		}
 		public String getPropertyName(int index) {
@@ -60,50 +142,215 @@ public class Configuration {
 			return properties.size();
 		}
 		public Object getProperty(String key) {
-			for (XMLProperty p : properties) {
-				if (p.getKey().equals(key)) {
-					return p.getValue();
-				}
-			}
-			return null;
+			XMLProperty p = find(key);
+			return (p != null) ? p.getValue() : null;
 		}
 		public void setProperty(String key, Object value) {
 			this.setProperty(key, value, "");
 		}
 		public void setProperty(String key, Object value, String valueClass) {
 			if (value != null) {
-				for (XMLProperty p : properties) {
-					if (p.getKey().equals(key)) {
-						p.setValue(value);
-						return;
-					}
+				XMLProperty p = find(key);
+				if (p != null) {
+					p.setValue(value);
+					return;
 				}
-				properties.add(new XMLProperty(key, value));
+				p = new XMLProperty(key, value);
+				properties.add(p);
+				lookup.put(key, p);
 			}
 		}
 		public boolean remove(String key) {
+			XMLProperty p = find(key);
+			if (p != null) {
+				lookup.remove(key);
+				return properties.remove(p);
+			}
+			return false;
+		}
+		XMLProperty getEntry(String key) {
+			return find(key);
+		}
+		// Returns a copy with the key set to the value, the entry is replaced rather than modified so this store is unchanged
+		DataStore copyWith(String key, Object value) {
+			DataStore copy = new DataStore();
+			boolean found = false;
+			copy.properties.ensureCapacity(properties.size() + 1);
 			for (XMLProperty p : properties) {
-				if (p.getKey().equals(key)) {
-					return properties.remove(p);
+				if (!found && p.getKey().equals(key)) {
+					p = new XMLProperty(key, value);
+					found = true;
 				}
+				copy.properties.add(p);
+				copy.lookup.put(p.getKey(), p);
 			}
-			return false;
+			if (!found) {
+				XMLProperty p = new XMLProperty(key, value);
+				copy.properties.add(p);
+				copy.lookup.put(key, p);
+			}
+			TreeMap<String, XMLProperty> index = sorted;
+			if (index != null) {
+				index = new TreeMap<String, XMLProperty>(index);
+				index.put(key, copy.lookup.get(key));
+				copy.sorted = index;
+			}
+			return copy;
+		}
+		DataStore copyWithout(String key) {
+			return copyWithout(Collections.singleton(key));
+		}
+		DataStore copyWithout(Set<String> keys) {
+			DataStore copy = new DataStore();
+			copy.properties.ensureCapacity(properties.size());
+			for (XMLProperty p : properties) {
+				if (!keys.contains(p.getKey())) {
+					copy.properties.add(p);
+					copy.lookup.put(p.getKey(), p);
+				}
+			}
+			TreeMap<String, XMLProperty> index = sorted;
+			if (index != null) {
+				index = new TreeMap<String, XMLProperty>(index);
+				index.keySet().removeAll(keys);
+				copy.sorted = index;
+			}
+			return copy;
+		}
+		// Entries whose keys start with the prefix, in key order
+		SortedMap<String, XMLProperty> getPrefixed(String prefix) {
+			TreeMap<String, XMLProperty> index = sorted;
+			if (index == null || index.size() != properties.size()) {
+				index = new TreeMap<String, XMLProperty>();
+				for (XMLProperty p : properties) {
+					index.put(p.getKey(), p);
+				}
+				sorted = index;
+			}
+			return index.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+		}
+		private XMLProperty find(String key) {
+			// the list is public, so rebuild the lookup if entries were added or removed without going through the store
+			if (lookup.size() != properties.size()) {
+				lookup.clear();
+				for (XMLProperty p : properties) {
+					if (!lookup.containsKey(p.getKey())) {
+						lookup.put(p.getKey(), p);
+					}
+				}
+			}
+			return lookup.get(key);
+		}
+	}
+	
+	private static final String VERSION_2 = "v2:";
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final int[] HEX_VALUES = new int[128];
+	static {
+		Arrays.fill(HEX_VALUES, -1);
+		for (int h = 0; h < 16; h++) {
+			HEX_VALUES["0123456789ABCDEF".charAt(h)] = h;
+			HEX_VALUES["0123456789abcdef".charAt(h)] = h;
 		}
 	}
+	// Cipher and Mac instances are expensive to look up and not thread safe, so each thread keeps its own
+	private static final ThreadLocal<Cipher> desCipher = cipherCache("DES");
+	private static final ThreadLocal<Cipher> aesCipher = cipherCache("AES/CBC/PKCS5Padding");
+	private static final ThreadLocal<Mac> hmac = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA256");
+			} catch (GeneralSecurityException ex) {
+				throw new IllegalStateException("HmacSHA256 unavailable", ex);
+			}
+		}
+	};
+	private static final SecureRandom random = new SecureRandom();
 	
+	private final String name;
 	private final SecretKeySpec sks;
-	private DataStore data;
-	private File savefile = null;
+	private final SecretKeySpec aesKey;
+	private final SecretKeySpec macKey;
+	// Published stores are never modified, writers build a changed copy under the lock and swap it in so readers never block
+	private volatile DataStore data;
+	private volatile File savefile = null;
+	private volatile long loadedStamp = 0L;
+	// Read-only layers beneath this configuration's own values, each layer overrides the ones added before it
+	private final LinkedHashMap<String, DataStore> layers = new LinkedHashMap<String, DataStore>();
+	// The winning entry for every key across the layers and own values, rebuilt when loaded or the first layer is added
+	// and updated key by key after that, null without layers
+	private volatile ResolvedView resolved = null;
+	private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+	private ScheduledExecutorService scheduler = null;
+	private ScheduledFuture<?> watchTask = null;
+	private ScheduledFuture<?> saveTask = null;
+	private long autosaveDelay = 0L;
+	private volatile boolean dirty = false;
+	private Thread shutdownHook = null;
 	
-	private Configuration() {
-		sks = new SecretKeySpec(System.getProperty("user.name").concat(new String(new char[] {'7','$','5','!','2','#','0','b'})).getBytes(), 0, 8, "DES");
+	/** Keys for a named configuration without a secret are derived from the name and the user name, which keeps the
+	 *  values of different names apart but does not protect them: anyone who knows the name can derive the same keys.
+	 *  A configuration given its own secret derives every key, including the legacy DES key, from that secret instead.
+	 */
+	private Configuration(String name, char[] key) {
+		this.name = name;
+		byte[] secret = System.getProperty("user.name").concat(new String(new char[] {'7','$','5','!','2','#','0','b'})).getBytes();
+		try {
+			if (key != null) {
+				secret = name.concat(":").concat(new String(key)).getBytes("UTF8");
+				sks = deriveKey(secret, "des", "DES");
+			} else {
+				// the legacy DES key is shared so values copied from the default configuration can still be read
+				sks = new SecretKeySpec(secret, 0, 8, "DES");
+				if (!DEFAULT.equals(name)) {
+					secret = name.concat(":").concat(new String(secret, "ISO-8859-1")).getBytes("UTF8");
+				}
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		aesKey = deriveKey(secret, "aes", "AES");
+		macKey = deriveKey(secret, "mac", "HmacSHA256");
+		Arrays.fill(secret, (byte)0);
 		data = new DataStore();
 	}
+	/** Returns the default configuration, the one used by the application before named configurations existed */
 	public static Configuration getInstance() {
-		if (instance == null) {
-			instance = new Configuration();
+		return getInstance(DEFAULT);
+	}
+	/** Returns the configuration with the given name, creating it on first use. Each named configuration has its own
+	 *  values, save file, listeners and encryption keys, so callers using different names never contend. The keys only
+	 *  separate one name from another, use getInstance(name, secret) when the encrypted values need protecting.
+	 */
+	public static Configuration getInstance(String name) {
+		return getInstance(name, null);
+	}
+	/** Returns the configuration with the given name, creating it on first use with encryption keys derived from the
+	 *  secret rather than from the name. The secret array is not kept or modified. Asking for an existing name with a
+	 *  different secret throws IllegalStateException, a null secret returns the existing configuration as it is.
+	 */
+	public static Configuration getInstance(String name, char[] secret) {
+		Configuration config = instances.get(name);
+		if (config == null || secret != null) {
+			// construction is cheap and starts no threads, so losing the race only discards an unused instance
+			Configuration created = new Configuration(name, secret);
+			if (config == null) {
+				config = instances.putIfAbsent(name, created);
+			}
+			if (config == null) {
+				config = created;
+			} else if (secret != null && !config.aesKey.equals(created.aesKey)) {
+				throw new IllegalStateException("Configuration " + name + " already exists with different keys.");
+			}
 		}
-		return instance;
+		return config;
+	}
+	public static Set<String> getInstanceNames() {
+		return Collections.unmodifiableSet(new HashSet<String>(instances.keySet()));
+	}
+	public String getName() {
+		return name;
 	}
 	public void setSaveFile(File file) {
 		savefile = file;
@@ -124,8 +371,18 @@ public class Configuration {
 		}
 	}
 	public void saveConfiguration() throws IOException {
-		if (savefile != null) {
-			JavaIO.saveXML(savefile, new DataStore[] { data });
+		File file = savefile;
+		if (file != null) {
+			synchronized (this) {
+				DataStore store = data;
+				if (!JavaIO.saveXML(file, new DataStore[] { store })) {
+					// the file still holds the previous values, so the stamp and snapshot must keep describing them
+					throw new IOException("Unable to save configuration: " + file);
+				}
+				// our own write is not an external change, so the watcher should not reload it
+				loadedStamp = getStamp(file);
+				writeCache(file, file.lastModified(), file.length(), checksum(readBytes(file)), store);
+			}
 		} else {
 			throw new IOException("Save location not set.");
 		}
@@ -133,27 +390,410 @@ public class Configuration {
 	public void loadConfiguration(File file) throws Exception {
 		savefile = file;
 		if (savefile.exists()) {
-			DataStore loadedValues = (DataStore)XMLFileUtility.readXMLObject(new FileInputStream(savefile));
+			long stamp = getStamp(savefile);
+			DataStore loadedValues = readStore(savefile, true);
 			if (loadedValues != null) {
-				this.data = loadedValues;
+				synchronized (this) {
+					this.data = loadedValues;
+					this.loadedStamp = stamp;
+					resolveAll();
+				}
+			}
+		}
+	}
+	/** Loads the save file again if it changed since it was last loaded or saved, swaps it in, and returns the keys
+	 *  whose values differ. The current values are kept if the file cannot be read. While autosave has changes that
+	 *  are not yet written the reload is skipped, local changes win and the autosave then overwrites the file.
+	 */
+	public Set<String> reloadConfiguration() {
+		File file = savefile;
+		if (file == null || !file.exists()) {
+			return Collections.<String>emptySet();
+		}
+		long stamp = getStamp(file);
+		if (stamp == loadedStamp || dirty) {
+			return Collections.<String>emptySet();
+		}
+		DataStore loadedValues = readStore(file, true);
+		if (loadedValues == null) {
+			logger.log(Level.WARNING, "Reload skipped, unable to read configuration: " + file);
+			return Collections.<String>emptySet();
+		}
+		Set<String> changed = new HashSet<String>();
+		synchronized (this) {
+			// the file was read without the lock, if it has been saved or changed since then what was read is stale
+			// and swapping it in could drop newer values, the next poll reads it again
+			if (stamp == loadedStamp || getStamp(file) != stamp || dirty) {
+				return changed;
+			}
+			DataStore current = data;
+			for (XMLProperty p : current.properties) {
+				Object value = loadedValues.getProperty(p.getKey());
+				if (value == null || !value.equals(p.getValue())) {
+					changed.add(p.getKey());
+				}
+			}
+			for (XMLProperty p : loadedValues.properties) {
+				if (current.getProperty(p.getKey()) == null) {
+					changed.add(p.getKey());
+				}
+			}
+			data = loadedValues;
+			loadedStamp = stamp;
+			resolve(changed);
+		}
+		if (!changed.isEmpty()) {
+			for (ChangeListener listener : listeners) {
+				try {
+					listener.configurationChanged(Collections.unmodifiableSet(changed));
+				} catch (Exception ex) {
+					logger.log(Level.WARNING, "Configuration listener failed: " + ex.getMessage());
+				}
+			}
+		}
+		return changed;
+	}
+	/** Polls the save file on a background thread and reloads it when it is modified by another process */
+	public synchronized void startWatching(long intervalMillis) {
+		if (watchTask != null) {
+			return;
+		}
+		watchTask = getScheduler().scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				reloadConfiguration();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	public synchronized void stopWatching() {
+		if (watchTask != null) {
+			watchTask.cancel(false);
+			watchTask = null;
+		}
+	}
+	/** Saves automatically once no value has changed for the quiet interval, and again at JVM shutdown if anything is
+	 *  still unsaved. A burst of changes therefore results in one write. An interval of zero turns autosave off.
+	 */
+	public synchronized void setAutosave(long quietMillis) {
+		autosaveDelay = Math.max(0L, quietMillis);
+		if (autosaveDelay > 0 && shutdownHook == null) {
+			shutdownHook = new Thread(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, "Configuration-" + name + "-autosave");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		} else if (autosaveDelay == 0 && shutdownHook != null) {
+			flush();
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			shutdownHook = null;
+		}
+	}
+	public boolean isDirty() {
+		return dirty;
+	}
+	/** Writes pending autosave changes now */
+	public void flush() {
+		synchronized (this) {
+			if (!dirty) {
+				return;
+			}
+			dirty = false;
+			if (saveTask != null) {
+				saveTask.cancel(false);
+				saveTask = null;
+			}
+		}
+		save();
+	}
+	// Called with the lock held after every change, restarts the quiet interval
+	private void markDirty() {
+		if (autosaveDelay <= 0) {
+			return;
+		}
+		dirty = true;
+		if (saveTask != null) {
+			saveTask.cancel(false);
+		}
+		saveTask = getScheduler().schedule(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, autosaveDelay, TimeUnit.MILLISECONDS);
+	}
+	private synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "Configuration-" + name + "-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return scheduler;
+	}
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+	// Loads from the binary snapshot when it still matches the save file, otherwise parses the XML and, when snapshots
+	// are wanted for the file, rewrites the snapshot
+	private static DataStore readStore(File file, boolean snapshot) {
+		try {
+			File cache = getCacheFile(file);
+			long modified = file.lastModified();
+			long length = file.length();
+			byte[] xml = null;
+			if (snapshot && cache.exists()) {
+				FileInputStream input = new FileInputStream(cache);
+				try {
+					// read onto the heap rather than mapped, a mapped file cannot be replaced on Windows until the
+					// mapping is garbage collected, which would keep a stale snapshot from ever being rewritten
+					FileChannel channel = input.getChannel();
+					ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+					while (buffer.hasRemaining()) {
+						if (channel.read(buffer) < 0) {
+							throw new EOFException("Configuration cache ended early.");
+						}
+					}
+					buffer.flip();
+					long cachedModified = buffer.getLong();
+					long cachedLength = buffer.getLong();
+					long cachedChecksum = buffer.getLong();
+					boolean valid = (cachedModified == modified && cachedLength == length);
+					if (!valid && cachedLength == length) {
+						// touched or copied without changing the content
+						xml = readBytes(file);
+						valid = (checksum(xml) == cachedChecksum);
+					}
+					if (valid) {
+						Object[] stores = (Object[])XMLBinaryFormat.readObjects(new BufferInput(buffer));
+						return (DataStore)stores[0];
+					}
+				} catch (Exception ex) {
+					logger.log(Level.FINE, "Ignoring unreadable configuration cache: " + ex.getMessage());
+				} finally {
+					input.close();
+				}
+			}
+			if (xml == null) {
+				xml = readBytes(file);
+			}
+			DataStore store = (DataStore)XMLFileUtility.readXMLObject(new ByteArrayInputStream(xml));
+			if (store != null && snapshot) {
+				writeCache(file, modified, length, checksum(xml), store);
+			}
+			return store;
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+	private static void writeCache(File file, long modified, long length, long checksum, DataStore store) {
+		File cache = getCacheFile(file);
+		File temp = new File(cache.getPath() + ".tmp");
+		try {
+			BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				JavaIO.writeLong(output, modified);
+				JavaIO.writeLong(output, length);
+				JavaIO.writeLong(output, checksum);
+				XMLBinaryFormat.writeObjects(output, new DataStore[] { store });
+			} finally {
+				output.close();
+			}
+			// written aside and renamed so a reader never maps a partial snapshot
+			if (!temp.renameTo(cache) && !(cache.delete() && temp.renameTo(cache))) {
+				temp.delete();
+			}
+		} catch (Exception ex) {
+			temp.delete();
+			logger.log(Level.FINE, "Unable to write configuration cache: " + ex.getMessage());
+		}
+	}
+	private static File getCacheFile(File file) {
+		return new File(file.getPath() + ".cache");
+	}
+	private static byte[] readBytes(File file) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
 			}
+			return bytes.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+	private static long checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		return crc.getValue();
+	}
+	// Combines the modification time and size so rewrites within the file system's timestamp resolution are still noticed
+	private static long getStamp(File file) {
+		return file.lastModified() * 31L + file.length();
+	}
+	/** Adds a read-only layer of values beneath this configuration's own values, replacing any layer with the same
+	 *  name. Layers added later take precedence, so defaults are added first and site or host overrides after them.
+	 *  Layer values are never saved.
+	 */
+	public synchronized void addLayer(String name, Map<String, ?> values) {
+		DataStore layer = new DataStore();
+		for (Map.Entry<String, ?> entry : values.entrySet()) {
+			layer.setProperty(entry.getKey(), entry.getValue());
+		}
+		putLayer(name, layer);
+	}
+	/** Adds a read-only layer loaded from a saved configuration file */
+	public synchronized void addLayer(String name, File file) throws IOException {
+		DataStore layer = readStore(file, false);
+		if (layer == null) {
+			throw new IOException("Unable to read configuration layer: " + file);
+		}
+		putLayer(name, layer);
+	}
+	/** Changes a single value in an existing layer, only the key itself is resolved again */
+	public synchronized void setLayerValue(String name, String key, Object value) {
+		DataStore layer = layers.get(name);
+		if (layer == null) {
+			throw new IllegalArgumentException("No configuration layer: " + name);
+		}
+		layers.put(name, (value != null) ? layer.copyWith(key, value) : layer.copyWithout(key));
+		resolve(Collections.singleton(key));
+	}
+	public synchronized boolean removeLayer(String name) {
+		DataStore layer = layers.remove(name);
+		if (layer == null) {
+			return false;
 		}
+		if (layers.isEmpty()) {
+			resolved = null;
+		} else {
+			resolve(keysOf(layer));
+		}
+		return true;
+	}
+	public synchronized List<String> getLayerNames() {
+		return new ArrayList<String>(layers.keySet());
+	}
+	private void putLayer(String name, DataStore layer) {
+		DataStore previous = layers.put(name, layer);
+		if (resolved == null) {
+			resolveAll();
+			return;
+		}
+		Set<String> keys = keysOf(layer);
+		if (previous != null) {
+			keys.addAll(keysOf(previous));
+		}
+		resolve(keys);
+	}
+	private static Set<String> keysOf(DataStore store) {
+		Set<String> keys = new HashSet<String>();
+		for (XMLProperty p : store.properties) {
+			keys.add(p.getKey());
+		}
+		return keys;
+	}
+	// Called with the lock held after the own values or a layer changed, only the given keys are looked up again
+	// and updated in place, so a write costs the changed keys rather than a copy of the whole view
+	private void resolve(Set<String> keys) {
+		ResolvedView view = resolved;
+		if (view == null || keys.isEmpty()) {
+			return;
+		}
+		ArrayList<DataStore> stack = new ArrayList<DataStore>(layers.values());
+		for (String key : keys) {
+			XMLProperty p = data.getEntry(key);
+			for (int i = stack.size() - 1; i >= 0 && p == null; i--) {
+				p = stack.get(i).getEntry(key);
+			}
+			if (p != null) {
+				view.entries.put(key, p);
+				view.sorted.put(key, p);
+			} else {
+				view.entries.remove(key);
+				view.sorted.remove(key);
+			}
+		}
+	}
+	private void resolveAll() {
+		if (layers.isEmpty()) {
+			resolved = null;
+			return;
+		}
+		HashMap<String, XMLProperty> view = new HashMap<String, XMLProperty>();
+		for (DataStore layer : layers.values()) {
+			for (XMLProperty p : layer.properties) {
+				view.put(p.getKey(), p);
+			}
+		}
+		for (XMLProperty p : data.properties) {
+			view.put(p.getKey(), p);
+		}
+		resolved = new ResolvedView(view);
+	}
+	// A single lookup whether or not there are layers
+	private XMLProperty getEntry(String key) {
+		ResolvedView view = resolved;
+		return (view != null) ? view.entries.get(key) : data.getEntry(key);
+	}
+	private SortedMap<String, XMLProperty> getPrefixed(String prefix) {
+		ResolvedView view = resolved;
+		if (view == null) {
+			return data.getPrefixed(prefix);
+		}
+		return view.sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
 	}
 	public int getSize() {
-		return data.getPropertyCount();
+		ResolvedView view = resolved;
+		return (view != null) ? view.entries.size() : data.getPropertyCount();
 	}
 	public Object getValue(String key) {
-		return data.getProperty(key);
+		XMLProperty p = getEntry(key);
+		return (p != null) ? p.getValue() : null;
 	}
 	public Object getValue(String key, Object defaultValue) {
 		Object value = getValue(key);
 		return (value != null) ? value : defaultValue;
 	}
+	/** Returns the values of every key in the dotted section, for example "db.pool" gives "db.pool.size" and
+	 *  "db.pool.timeout.ms" but not "db.poolsize". Keys are returned in full and in sorted order.
+	 */
+	public Map<String, Object> getSection(String prefix) {
+		LinkedHashMap<String, Object> section = new LinkedHashMap<String, Object>();
+		for (XMLProperty p : getPrefixed(prefix + ".").values()) {
+			section.put(p.getKey(), p.getValue());
+		}
+		return Collections.unmodifiableMap(section);
+	}
+	/** Returns every key starting with the prefix in sorted order */
+	public List<String> getKeys(String prefix) {
+		return new ArrayList<String>(getPrefixed(prefix).keySet());
+	}
+	/** Removes the key itself and every key in its dotted section, returning the number of keys removed */
+	public synchronized int removeSection(String prefix) {
+		Set<String> keys = new HashSet<String>(data.getPrefixed(prefix + ".").keySet());
+		if (data.getProperty(prefix) != null) {
+			keys.add(prefix);
+		}
+		if (!keys.isEmpty()) {
+			data = data.copyWithout(keys);
+			resolve(keys);
+			markDirty();
+		}
+		return keys.size();
+	}
 	public String getDecryptedValue(String key) {
 		try {
 			Object value = getValue(key);
 			if (value != null) {
-				return decrypt(value.toString(), sks);
+				return decrypt(value.toString());
 			} else {
 				return "";
 			}
@@ -173,86 +813,167 @@ public class Configuration {
 		return getBool(key, false);
 	}
 	public boolean getBool(String key, boolean defaultValue) {
-		Object value = getValue(key);
-		return (value instanceof Boolean) ? (Boolean)value : defaultValue;
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasBoolean()) ? p.getBoolean() : defaultValue;
 	}
 	public byte getByte(String key) {
 		return getByte(key, (byte)0);
 	}
 	public byte getByte(String key, byte defaultValue) {
-		Object value = getValue(key);
-		return (value instanceof Byte) ? (Byte)value : defaultValue;
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasByte()) ? p.getByte() : defaultValue;
 	}
 	public short getShort(String key) {
 		return getShort(key, (short)0);
 	}
 	public short getShort(String key, short defaultValue) {
-		Object value = getValue(key);
-		return (value instanceof Short) ? (Short)value : defaultValue;
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasShort()) ? p.getShort() : defaultValue;
 	}
 	public int getInt(String key) {
 		return getInt(key, 0);
 	}
 	public int getInt(String key, int defaultValue) {
-		Object value = getValue(key);
-		return (value instanceof Integer) ? (Integer)value : defaultValue;
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasInt()) ? p.getInt() : defaultValue;
 	}
 	public long getLong(String key) {
 		return getLong(key, 0L);
 	}
 	public long getLong(String key, long defaultValue) {
-		Object value = getValue(key);
-		return (value instanceof Long) ? (Long)value : defaultValue;
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasLong()) ? p.getLong() : defaultValue;
+	}
+	public double getDouble(String key) {
+		return getDouble(key, 0.0);
+	}
+	public double getDouble(String key, double defaultValue) {
+		XMLProperty p = getEntry(key);
+		return (p != null && p.hasDouble()) ? p.getDouble() : defaultValue;
 	}
 	// Only sets the value if it doesn't already exist
-	public void setDefault(String key, Object value) {
+	public synchronized void setDefault(String key, Object value) {
 		Object result = getValue(key);
 		if (result == null) {
 			setValue(key, value);
 		}
 	}
-	public void setValue(String key, Object value) {
-		data.setProperty(key, value);
+	public synchronized void setValue(String key, Object value) {
+		if (value != null) {
+			data = data.copyWith(key, value);
+			resolve(Collections.singleton(key));
+			markDirty();
+		}
 	}
 	public void setEncryptedValue(String key, String value) {
 		try {
-			setValue(key, encrypt(value, sks));
+			setValue(key, encrypt(value));
 		} catch (Exception ex) {
 			logger.log(Level.WARNING, "Encryption Failure: [" + key + "] " + ex.getMessage());
 		}
 	}
-	public boolean remove(String key) {
-		return data.remove(key);
+	public synchronized boolean remove(String key) {
+		if (data.getProperty(key) == null) {
+			return false;
+		}
+		data = data.copyWithout(key);
+		resolve(Collections.singleton(key));
+		markDirty();
+		return true;
 	}
-	private String encrypt(String str, SecretKeySpec keySpec) throws Exception {
-		// Encode the string into bytes using utf-8
+	// Values are written as "v2:" followed by hex(iv + AES/CBC ciphertext + HMAC-SHA256 of both), unprefixed values
+	// are legacy DES and can still be read. AES/GCM would be simpler but the JDK 7 SunJCE provider has no GCM cipher.
+	private String encrypt(String str) throws Exception {
 		byte[] utf8 = str.getBytes("UTF8");
-
-		// Encrypt
-		Cipher cipher = Cipher.getInstance("DES");
-		cipher.init(Cipher.ENCRYPT_MODE, keySpec);
+		byte[] iv = new byte[16];
+		random.nextBytes(iv);
+		Cipher cipher = aesCipher.get();
+		cipher.init(Cipher.ENCRYPT_MODE, aesKey, new IvParameterSpec(iv));
 		byte[] encoded = cipher.doFinal(utf8);
-
-		// Encode bytes to hex string
-		StringBuilder sb = new StringBuilder();
-		for (byte b : encoded) {
-			sb.append(String.format("%02X", b));
-		}
-		return sb.toString().trim();
-	}
-	private String decrypt(String str, SecretKeySpec keySpec) throws Exception {
-		// Decode hex string to get bytes
-		int len = str.length();
-		byte[] data = new byte[len / 2];
-		for (int i = 0; i < len; i += 2) {
-			data[i / 2] = (byte) ((Character.digit(str.charAt(i), 16) << 4) + Character.digit(str.charAt(i+1), 16));
-		}
-		// Decryp
-		Cipher cipher = Cipher.getInstance("DES");
-		cipher.init(Cipher.DECRYPT_MODE, keySpec);
-		byte[] utf8 = cipher.doFinal(data);
-
-		// Decode using utf-8
-		return new String(utf8, "UTF8");
+		Mac mac = hmac.get();
+		mac.init(macKey);
+		mac.update(iv);
+		mac.update(encoded);
+		byte[] tag = mac.doFinal();
+		
+		byte[] output = new byte[iv.length + encoded.length + tag.length];
+		System.arraycopy(iv, 0, output, 0, iv.length);
+		System.arraycopy(encoded, 0, output, iv.length, encoded.length);
+		System.arraycopy(tag, 0, output, iv.length + encoded.length, tag.length);
+		return VERSION_2 + toHex(output);
+	}
+	private String decrypt(String str) throws Exception {
+		if (!str.startsWith(VERSION_2)) {
+			return decryptLegacy(str);
+		}
+		byte[] input = fromHex(str, VERSION_2.length());
+		if (input.length < 48) {
+			throw new GeneralSecurityException("Encrypted value is too short.");
+		}
+		int length = input.length - 48;
+		Mac mac = hmac.get();
+		mac.init(macKey);
+		mac.update(input, 0, 16 + length);
+		byte[] tag = mac.doFinal();
+		byte[] stored = new byte[32];
+		System.arraycopy(input, 16 + length, stored, 0, 32);
+		if (!MessageDigest.isEqual(tag, stored)) {
+			throw new GeneralSecurityException("Encrypted value failed authentication.");
+		}
+		Cipher cipher = aesCipher.get();
+		cipher.init(Cipher.DECRYPT_MODE, aesKey, new IvParameterSpec(input, 0, 16));
+		return new String(cipher.doFinal(input, 16, length), "UTF8");
+	}
+	private String decryptLegacy(String str) throws Exception {
+		Cipher cipher = desCipher.get();
+		cipher.init(Cipher.DECRYPT_MODE, sks);
+		return new String(cipher.doFinal(fromHex(str, 0)), "UTF8");
+	}
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int b = 0; b < bytes.length; b++) {
+			chars[b * 2] = HEX[(bytes[b] >> 4) & 0xF];
+			chars[b * 2 + 1] = HEX[bytes[b] & 0xF];
+		}
+		return new String(chars);
+	}
+	private static byte[] fromHex(String str, int offset) throws GeneralSecurityException {
+		int len = str.length() - offset;
+		if (len % 2 != 0) {
+			throw new GeneralSecurityException("Invalid hex value.");
+		}
+		byte[] bytes = new byte[len / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			char hi = str.charAt(offset + i * 2);
+			char lo = str.charAt(offset + i * 2 + 1);
+			int h = (hi < 128) ? HEX_VALUES[hi] : -1;
+			int l = (lo < 128) ? HEX_VALUES[lo] : -1;
+			if (h < 0 || l < 0) {
+				throw new GeneralSecurityException("Invalid hex value.");
+			}
+			bytes[i] = (byte)((h << 4) | l);
+		}
+		return bytes;
+	}
+	private static ThreadLocal<Cipher> cipherCache(final String transformation) {
+		return new ThreadLocal<Cipher>() {
+			@Override
+			protected Cipher initialValue() {
+				try {
+					return Cipher.getInstance(transformation);
+				} catch (GeneralSecurityException ex) {
+					throw new IllegalStateException("Cipher unavailable: " + transformation, ex);
+				}
+			}
+		};
+	}
+	private static SecretKeySpec deriveKey(byte[] secret, String purpose, String algorithm) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(purpose.getBytes("UTF8"));
+			return new SecretKeySpec(digest.digest(secret), 0, 16, algorithm);
+		} catch (Exception ex) {
+			throw new IllegalStateException("Unable to derive configuration key.", ex);
+		}
 	}
 }
@@ -0,0 +1,222 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a bounded jdbc connection pool for the database manager ~ 10/19/2026
+ *
+ *  At most maxSize connections are lent out at once, further borrowers wait up to the borrow timeout. Connections
+ *  are validated before they are lent and closed once they have been idle longer than the idle timeout. Connections
+ *  still lent out when the pool is closed are closed as they are returned. Each connection caches its prepared
+ *  statements, see PooledConnection.
+ */
+public final class ConnectionPool {
+	private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+	private static final int VALIDATION_SECONDS = 2;
+	private static final String VALIDATION_QUERY = "SELECT 1";
+	
+	private final String url;
+	private final String username;
+	private final String password;
+	private final int maxSize;
+	private final long borrowTimeout;
+	private final long idleTimeout;
+	private final Semaphore permits;
+	// Most recently returned first, so the least used connections age out; guarded by itself
+	private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+	private volatile int statementCacheSize = 32;
+	
+	public ConnectionPool(String url, String username, String password, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least one.");
+		}
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.borrowTimeout = Math.max(0L, borrowTimeoutMillis);
+		this.idleTimeout = Math.max(1L, idleTimeoutMillis);
+		this.permits = new Semaphore(maxSize, true);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "ConnectionPool-evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long interval = Math.max(1000L, idleTimeout / 2);
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				evictIdle();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+	/** Lends a validated connection, opening a new one when none are idle. Every borrowed connection must be passed
+	 *  back to release, usually in a finally block.
+	 */
+	public PooledConnection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed.");
+		}
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLTimeoutException("Timed out after " + borrowTimeout + "ms waiting for a database connection.");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection.", ex);
+		}
+		boolean lent = false;
+		try {
+			PooledConnection pooled;
+			while ((pooled = poll()) != null) {
+				if (isUsable(pooled)) {
+					lent = true;
+					return pooled;
+				}
+				pooled.close();
+			}
+			pooled = new PooledConnection(this, DriverManager.getConnection(url, username, password), statementCacheSize);
+			lent = true;
+			return pooled;
+		} finally {
+			if (!lent) {
+				permits.release();
+			}
+		}
+	}
+	/** Returns a borrowed connection to the pool, or closes it if it was invalidated or the pool has been closed */
+	public void release(PooledConnection pooled) {
+		if (pooled == null) {
+			return;
+		}
+		if (closed || pooled.isInvalid()) {
+			pooled.close();
+		} else {
+			pooled.touch();
+			synchronized (idle) {
+				idle.push(pooled);
+			}
+		}
+		permits.release();
+	}
+	/** Closes every idle connection and stops lending, connections still in use are closed when released */
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		ArrayList<PooledConnection> closing;
+		synchronized (idle) {
+			closing = new ArrayList<PooledConnection>(idle);
+			idle.clear();
+		}
+		for (PooledConnection pooled : closing) {
+			pooled.close();
+		}
+	}
+	/** Sets how many prepared statements each new connection keeps open, at least one since callers use the statement
+	 *  they are handed after it has been cached
+	 */
+	public void setStatementCacheSize(int size) {
+		statementCacheSize = Math.max(1, size);
+	}
+	public boolean isClosed() {
+		return closed;
+	}
+	public int getMaxSize() {
+		return maxSize;
+	}
+	public int getActiveCount() {
+		return maxSize - permits.availablePermits();
+	}
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+	private PooledConnection poll() {
+		synchronized (idle) {
+			return idle.poll();
+		}
+	}
+	private boolean isUsable(PooledConnection pooled) {
+		if (System.currentTimeMillis() - pooled.getLastUsed() > idleTimeout) {
+			return false;
+		}
+		// a query rather than Connection.isValid, which pre JDBC 4 drivers such as the bundled one do not implement
+		Statement statement = null;
+		try {
+			statement = pooled.getConnection().createStatement();
+			statement.setQueryTimeout(VALIDATION_SECONDS);
+			statement.executeQuery(VALIDATION_QUERY).close();
+			return true;
+		} catch (SQLException ex) {
+			return false;
+		} finally {
+			if (statement != null) {
+				try {
+					statement.close();
+				} catch (SQLException ex) {
+				}
+			}
+		}
+	}
+	// Idle connections are only ever taken from the head, so expired ones collect at the tail
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		ArrayList<PooledConnection> expired = new ArrayList<PooledConnection>();
+		synchronized (idle) {
+			Iterator<PooledConnection> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				PooledConnection pooled = it.next();
+				if (now - pooled.getLastUsed() <= idleTimeout) {
+					break;
+				}
+				it.remove();
+				expired.add(pooled);
+			}
+		}
+		for (PooledConnection pooled : expired) {
+			pooled.close();
+		}
+		if (!expired.isEmpty()) {
+			logger.log(Level.FINE, "Closed " + expired.size() + " idle database connections.");
+		}
+	}
+}
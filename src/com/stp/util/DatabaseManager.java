@@ -24,17 +24,20 @@ package com.stp.util;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
@@ -43,6 +46,9 @@ import java.text.SimpleDateFormat;
 /** @author Paul Collins
  *  @version v1.0 ~ 03/10/2018
  *  HISTORY: Version 1.0 created a singleton class to retrieve data from a MySQL database using the jdbc driver ~ 03/10/2018
+ *
+ *  Each call borrows a connection from a bounded pool and returns it before the call completes, so concurrent
+ *  callers run in parallel up to the pool size.
  */
 public final class DatabaseManager {
 	private static final Logger logger = Logger.getLogger(Configuration.class.getName());
@@ -86,13 +92,40 @@ public final class DatabaseManager {
 	//private static final String USER = "jdkuser";
 	//private static final String PASS = "jdkpass";
 	//private static final String SQL_LOC = "jdbc:mysql://localhost:3306/";
-	private static Connection connection;
-	private static Statement stmt;
-	private static boolean connected = false;
+	private static volatile ConnectionPool pool = null;
+	private static volatile boolean connected = false;
 	private static boolean logging = true;
-	private static ArrayList<String> querylog = new ArrayList<String>();
+	private static List<String> querylog = Collections.synchronizedList(new ArrayList<String>());
 	private static String url = null;
 	private static String[] credentials = null;
+	private static int poolSize = 8;
+	private static long borrowTimeout = 30000L;
+	private static long idleTimeout = 300000L;
+	private static int statementCacheSize = 32;
+	private static int batchSize = 500;
+	// Column layout of each table used by inserts, dropped whenever a table's columns change
+	private static final ConcurrentHashMap<String, TableSchema> schemas = new ConcurrentHashMap<String, TableSchema>();
+	
+	private static final class TableSchema {
+		private final String[] names;
+		private final int[] types;
+		private final String insert;
+		private TableSchema(String tableName, ResultSetMetaData metaData) throws SQLException {
+			names = new String[metaData.getColumnCount()];
+			types = new int[names.length];
+			StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" VALUES(");
+			for (int c = 0; c < names.length; c++) {
+				names[c] = metaData.getColumnName(c + 1);
+				types[c] = metaData.getColumnType(c + 1);
+				sql.append((c == 0) ? "?" : ",?");
+			}
+			insert = sql.append(")").toString();
+		}
+		// Generated keys come back as longs, give them the class the id column is normally read as
+		private Object toKey(long key) {
+			return (resultSetMap.get(types[0] + "") == Integer.TYPE) ? (Object)Integer.valueOf((int)key) : (Object)Long.valueOf(key);
+		}
+	}
 	
 	public static void setCredentials(String database, String location, String username, String password) {
 		url = "jdbc:mysql://" + location + "/" + database;
@@ -110,13 +143,18 @@ public final class DatabaseManager {
 		url = "jdbc:mysql://" + location + "/" + database;
 		credentials = new String[] { username, password };
 		connected = reconnect();
-		if (connected && flushlog) {
-			for (int q = 0; q < querylog.size(); q++) {
-				executeStatement(querylog.get(q).toString());
-			}
-		}
 		if (connected) {
-			querylog.clear();
+			// replay a copy, statements that cannot be sent again are logged anew rather than extending this pass
+			ArrayList<String> pending;
+			synchronized (querylog) {
+				pending = new ArrayList<String>(querylog);
+				querylog.clear();
+			}
+			if (flushlog) {
+				for (String query : pending) {
+					executeStatement(query);
+				}
+			}
 		}
 		return connected;
 	}
@@ -127,30 +165,49 @@ public final class DatabaseManager {
 		return connected;
 	}
 	public static void closeConnection() {
-		try {
-			connection.close();
-			connection = null;
-			connected = false;
-		} catch (Exception e) {
+		ConnectionPool current = pool;
+		pool = null;
+		connected = false;
+		if (current != null) {
+			current.close();
 		}
 		querylog.clear();
 	}
+	/** Sets the pool limits used from the next connect, a larger pool lets more calls run at the same time */
+	public static void setPoolSize(int size, long borrowTimeoutMillis, long idleTimeoutMillis) {
+		poolSize = Math.max(1, size);
+		borrowTimeout = borrowTimeoutMillis;
+		idleTimeout = idleTimeoutMillis;
+	}
+	/** Sets how many prepared statements each pooled connection keeps open from the next connect, at least one */
+	public static void setStatementCacheSize(int size) {
+		statementCacheSize = Math.max(1, size);
+	}
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+	/** Replaces the pool with a new one and checks that a connection can be opened. Calls already running finish on
+	 *  the connections they borrowed, which are closed when returned.
+	 */
 	public static boolean reconnect() {
 		if (url != null && credentials != null) {
+			ConnectionPool created = null;
 			try {
-				closeConnection();
-				if (connection == null || connection.isClosed()) {
-					Class.forName("com.mysql.jdbc.Driver");
-					connection = DriverManager.getConnection(url, credentials[0], credentials[1]);
-					stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-					connected = true;
-					return true;
-				} else {
-					connected = true;
-					return true;
+				Class.forName("com.mysql.jdbc.Driver");
+				created = new ConnectionPool(url, credentials[0], credentials[1], poolSize, borrowTimeout, idleTimeout);
+				created.setStatementCacheSize(statementCacheSize);
+				created.release(created.borrow());
+				ConnectionPool previous = pool;
+				pool = created;
+				connected = true;
+				schemas.clear();
+				if (previous != null) {
+					previous.close();
 				}
+				return true;
 			} catch (SQLException ex) {
 				logger.log(Level.WARNING, "Database Connection Error: [" + ex.getErrorCode() + "] " + ex.getMessage());
+				created.close();
 				return false;
 			} catch (ClassNotFoundException cnfe) {
 				logger.log(Level.WARNING, "Unable to locate database driver.");
@@ -160,26 +217,77 @@ public final class DatabaseManager {
 			return false;
 		}
 	}
-	private static void executeStatement(String command) {
+	private static PooledConnection borrow() throws SQLException {
+		ConnectionPool current = pool;
+		if (current == null) {
+			throw new SQLException("Database connection not set.");
+		}
+		return current.borrow();
+	}
+	private static void release(PooledConnection pooled) {
+		pooled.getPool().release(pooled);
+	}
+	// Scrollable so results can be counted with last() before they are read
+	private static Statement createStatement(PooledConnection pooled) throws SQLException {
+		return pooled.getConnection().createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+	}
+	private static void close(ResultSet rs) {
+		if (rs != null) {
+			try {
+				rs.close();
+			} catch (SQLException ex) {
+			}
+		}
+	}
+	private static void close(Statement statement) {
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (SQLException ex) {
+			}
+		}
+	}
+	/** Runs the statement and returns true if it was executed. When the database fails the statement, or no
+	 *  connection can be opened, it is held in the query log and every later statement is logged behind it until the
+	 *  next connect replays them in order. A statement that times out waiting for a busy pool is not run or logged,
+	 *  false is returned and the caller decides whether to try again.
+	 */
+	private static boolean executeStatement(String command) {
+		boolean executed = false;
 		if (connected) {
+			PooledConnection pooled = null;
+			Statement stmt = null;
 			try {
+				pooled = borrow();
+				stmt = createStatement(pooled);
 				stmt.executeUpdate(command);
+				executed = true;
+			} catch (SQLTimeoutException ex) {
+				logger.log(Level.WARNING, "MySQL statement not executed, no connection available: " + command + " " + ex.getMessage());
 			} catch (Exception ex)	{
 				logger.log(Level.WARNING, "Failed to execute MySQL statement: " + command + " with error message " + ex.getMessage());
-				closeConnection();
+				connected = false;
 				if (logging) {
 					logQuery(command);
 				}
+			} finally {
+				close(stmt);
+				if (pooled != null) {
+					release(pooled);
+				}
 			}
 		} else if (logging) {
 			logQuery(command);
 		}
 		logging = true;
+		return executed;
 	}
 	public static int executeStatement(String command, Object[] params) {
 		if (connected) {
+			PooledConnection pooled = null;
 			try { 
-				PreparedStatement statement = connection.prepareStatement(command);
+				pooled = borrow();
+				PreparedStatement statement = pooled.prepareStatement(command);
 				for (int p = 0; p < params.length; p++) {
 					Integer s = paramMap.get(params[p].getClass());
 					s = (s == null) ? 5 : s;
@@ -192,11 +300,15 @@ public final class DatabaseManager {
 				return statement.executeUpdate();
 			} catch (Exception ex) {
 				logger.log(Level.WARNING, "Failed to execute MySQL statement: " + command + " with error message " + ex.getMessage());
+			} finally {
+				if (pooled != null) {
+					release(pooled);
+				}
 			}
 		}
 		return -1;
 	}
-	public static void addTable(String tableName, String[] args) {
+	public static boolean addTable(String tableName, String[] args) {
 		String command = "CREATE TABLE " + tableName + "(id INT NOT NULL AUTO_INCREMENT,";
 		for (int i = 0; i < args.length; i++) {
 			command = command + args[i];
@@ -204,59 +316,203 @@ public final class DatabaseManager {
 			{ command = command + ","; }
 		}
 		command = command + ",PRIMARY KEY (id))";
-		executeStatement(command);
+		return executeStatement(command);
 	}
-	public static void truncateTable(String tableName) {
-		executeStatement("TRUNCATE TABLE " + tableName);
+	public static boolean truncateTable(String tableName) {
+		return executeStatement("TRUNCATE TABLE " + tableName);
 	}
-	public static void removeTable(String tableName) {
-		executeStatement("DROP TABLE " + tableName);
+	public static boolean removeTable(String tableName) {
+		schemas.remove(tableName);
+		return executeStatement("DROP TABLE " + tableName);
 	}
+	/** Inserts a row holding a value for each column and returns its generated id. The insert is prepared once per
+	 *  table from the cached column layout, so its cost does not grow with the table. While disconnected the insert
+	 *  is held in the query log and 0 is returned.
+	 */
 	public static Object addRow(String tableName, Object[] args) throws Exception {
-		int columns = 0;
-		ResultSet rs = null;
-		try {
-			rs = stmt.executeQuery("SELECT * FROM " + tableName);
-			columns = rs.getMetaData().getColumnCount();
-		} catch (Exception ex) {
+		PooledConnection pooled = null;
+		if (connected) {
+			try {
+				pooled = borrow();
+			} catch (SQLTimeoutException ex) {
+				throw ex;
+			} catch (SQLException ex) {
+				logger.log(Level.WARNING, "Database Connection Error: [" + ex.getErrorCode() + "] " + ex.getMessage());
+				connected = false;
+			}
 		}
-		if (columns == 0 || columns == args.length) {
-			Object row = 0;
-			String command = "INSERT INTO " + tableName + " VALUES(";
-			for (int i = 0; i < args.length; i++) {
-				if (args[i] instanceof Boolean) {
-					command = command + args[i].toString();
-				} else {
-					command = command + "'" + args[i].toString().replace("'", ":sqt;") + "'";
-				}
-				if (i != args.length - 1) {
-					command = command + ",";
+		if (pooled == null) {
+			executeStatement(getInsertCommand(tableName, args));
+			return 0;
+		}
+		try {
+			TableSchema schema;
+			try {
+				schema = getSchema(pooled, tableName);
+			} catch (SQLException ex) {
+				return insertFailed(tableName, args, ex);
+			}
+			if (schema.names.length != args.length) {
+				throw new Exception("Wrong number of arguments.");
+			}
+			PreparedStatement stmt = pooled.prepareStatement(schema.insert, Statement.RETURN_GENERATED_KEYS);
+			try {
+				for (int i = 0; i < args.length; i++) {
+					setParameter(stmt, i + 1, args[i]);
 				}
+				stmt.executeUpdate();
+			} catch (SQLException ex) {
+				return insertFailed(tableName, args, ex);
 			}
-			command = command + ")";
-			executeStatement(command);
-			if (rs != null) {
-				rs.close();
-				rs = stmt.executeQuery("SELECT id FROM " + tableName);
-				rs.last();
-				row = rs.getObject("id", resultSetMap);
+			logging = true;
+			ResultSet keys = stmt.getGeneratedKeys();
+			try {
+				return keys.next() ? schema.toKey(keys.getLong(1)) : (Object)0;
+			} finally {
+				keys.close();
 			}
-			return row; 
-		} else {
-			throw new Exception("Wrong number of arguments.");
+		} finally {
+			release(pooled);
 		}
-	}	
-	public static void deleteRow(String tableName, String validation) {
-		executeStatement("DELETE FROM " + tableName + " WHERE " + validation);
 	}
-	public static void addColumn(String tableName, String arg) {
-		executeStatement("ALTER TABLE " + tableName + " ADD " + arg);
+	private static Object insertFailed(String tableName, Object[] args, SQLException ex) {
+		String command = getInsertCommand(tableName, args);
+		logger.log(Level.WARNING, "Failed to execute MySQL statement: " + command + " with error message " + ex.getMessage());
+		connected = false;
+		if (logging) {
+			logQuery(command);
+		}
+		logging = true;
+		return 0;
 	}
-	public static void alterColumn(String tableName, String columnName, String arg) {
-		executeStatement("ALTER TABLE " + tableName + " CHANGE " + columnName + " " + arg);
+	// The insert as literal sql, for the query log which is replayed as plain statements
+	private static String getInsertCommand(String tableName, Object[] args) {
+		String command = "INSERT INTO " + tableName + " VALUES(";
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] instanceof Boolean) {
+				command = command + args[i].toString();
+			} else {
+				command = command + "'" + args[i].toString().replace("'", ":sqt;") + "'";
+			}
+			if (i != args.length - 1) {
+				command = command + ",";
+			}
+		}
+		return command + ")";
+	}
+	public static boolean deleteRow(String tableName, String validation) {
+		return executeStatement("DELETE FROM " + tableName + " WHERE " + validation);
+	}
+	public static boolean addColumn(String tableName, String arg) {
+		boolean executed = executeStatement("ALTER TABLE " + tableName + " ADD " + arg);
+		schemas.remove(tableName);
+		return executed;
+	}
+	public static boolean alterColumn(String tableName, String columnName, String arg) {
+		boolean executed = executeStatement("ALTER TABLE " + tableName + " CHANGE " + columnName + " " + arg);
+		schemas.remove(tableName);
+		return executed;
+	}
+	public static boolean deleteColumn(String tableName, String columnName) {
+		boolean executed = executeStatement("ALTER TABLE " + tableName + " DROP " + columnName);
+		schemas.remove(tableName);
+		return executed;
+	}
+	/** Sets how many rows addRows sends to the server in each batch */
+	public static void setBatchSize(int size) {
+		batchSize = Math.max(1, size);
+	}
+	/** Inserts every row with parameterized batches of up to the batch size, each batch is committed on its own. Every
+	 *  row holds a value for each column of the table, as with addRow, and the generated ids are returned in row order.
+	 */
+	public static Object[] addRows(String tableName, List<Object[]> rows) throws Exception {
+		PooledConnection pooled = borrow();
+		Connection connection = pooled.getConnection();
+		boolean autoCommit = connection.getAutoCommit();
+		try {
+			TableSchema schema = getSchema(pooled, tableName);
+			for (Object[] args : rows) {
+				if (args.length != schema.names.length) {
+					throw new Exception("Wrong number of arguments.");
+				}
+			}
+			Object[] ids = new Object[rows.size()];
+			int count = 0;
+			PreparedStatement stmt = pooled.prepareStatement(schema.insert, Statement.RETURN_GENERATED_KEYS);
+			connection.setAutoCommit(false);
+			for (int start = 0; start < rows.size(); start += batchSize) {
+				int end = Math.min(rows.size(), start + batchSize);
+				for (int r = start; r < end; r++) {
+					Object[] args = rows.get(r);
+					for (int i = 0; i < args.length; i++) {
+						setParameter(stmt, i + 1, args[i]);
+					}
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				connection.commit();
+				ResultSet keys = stmt.getGeneratedKeys();
+				try {
+					while (keys.next() && count < ids.length) {
+						ids[count++] = schema.toKey(keys.getLong(1));
+					}
+				} finally {
+					keys.close();
+				}
+			}
+			return ids;
+		} catch (Exception ex) {
+			try {
+				if (!connection.getAutoCommit()) {
+					connection.rollback();
+				}
+			} catch (SQLException rollbackEx) {
+				pooled.invalidate();
+			}
+			throw ex;
+		} finally {
+			try {
+				connection.setAutoCommit(autoCommit);
+			} catch (SQLException ex) {
+				pooled.invalidate();
+			}
+			release(pooled);
+		}
 	}
-	public static void deleteColumn(String tableName, String columnName) {
-		executeStatement("ALTER TABLE " + tableName + " DROP " + columnName);
+	// Read from an empty result so the lookup costs the same however large the table is
+	private static TableSchema getSchema(PooledConnection pooled, String tableName) throws SQLException {
+		TableSchema schema = schemas.get(tableName);
+		if (schema == null) {
+			Statement stmt = pooled.getConnection().createStatement();
+			try {
+				ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName + " LIMIT 0");
+				schema = new TableSchema(tableName, rs.getMetaData());
+			} finally {
+				close(stmt);
+			}
+			schemas.put(tableName, schema);
+		}
+		return schema;
+	}
+	// Text is stored with quotes as :sqt; like every other write in this class, the getters turn it back into a quote
+	private static void setParameter(PreparedStatement stmt, int index, Object value) throws SQLException {
+		if (value == null) {
+			stmt.setNull(index, Types.NULL);
+		} else if (value instanceof Boolean) {
+			stmt.setBoolean(index, (Boolean)value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			stmt.setInt(index, ((Number)value).intValue());
+		} else if (value instanceof Long) {
+			stmt.setLong(index, (Long)value);
+		} else if (value instanceof Double || value instanceof Float) {
+			stmt.setDouble(index, ((Number)value).doubleValue());
+		} else if (value instanceof Timestamp) {
+			stmt.setTimestamp(index, (Timestamp)value);
+		} else if (value instanceof java.util.Date) {
+			stmt.setDate(index, new Date(((java.util.Date)value).getTime()));
+		} else {
+			stmt.setString(index, value.toString().replace("'", ":sqt;"));
+		}
 	}
 	public static Object updateField(String tableName, String columnName, Object value, String validation) {
 		if (value instanceof Boolean || value instanceof Number) {
@@ -281,157 +537,218 @@ public final class DatabaseManager {
 		return value;
 	}
 	public static Object[] getColumnValues(String tableName, String columnName) throws Exception {
-		Object[] values = null;
-		ResultSet rs = stmt.executeQuery("SELECT " + columnName + " FROM " + tableName);
-		rs.last();
-		values = new Object[rs.getRow()];
-		rs.beforeFirst();
-		int rw = 0;
-		while(rs.next()) {
-			values[rw] = rs.getObject(columnName, resultSetMap);
-			rw++;
-		}
-		return values;
+		PooledConnection pooled = borrow();
+		Statement stmt = null;
+		try {
+			stmt = createStatement(pooled);
+			Object[] values = null;
+			ResultSet rs = stmt.executeQuery("SELECT " + columnName + " FROM " + tableName);
+			rs.last();
+			values = new Object[rs.getRow()];
+			rs.beforeFirst();
+			int rw = 0;
+			while(rs.next()) {
+				values[rw] = rs.getObject(columnName, resultSetMap);
+				rw++;
+			}
+			return values;
+		} finally {
+			close(stmt);
+			release(pooled);
+		}
 	}
 	public static void viewTable(String tableName) throws Exception {
-		//ResultSet rs = connection.getMetaData().getTables(null, null, null, null);
-		ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName);
-		ResultSetMetaData rsMetaData = rs.getMetaData();
-		int columns = rsMetaData.getColumnCount();
-		for (int c = 1; c <= columns; c++) {
-			System.out.print(rsMetaData.getColumnName(c));
-			if (c != columns) {
-				System.out.print(" : ");
-			}
-		}
-		System.out.print("\n");
-		while(rs.next()) {
-			for (int i = 1; i <= columns; i++) {
-				System.out.print(rs.getString(i));
-				if (i != columns) {
+		PooledConnection pooled = borrow();
+		Statement stmt = null;
+		try {
+			stmt = createStatement(pooled);
+			//ResultSet rs = connection.getMetaData().getTables(null, null, null, null);
+			ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName);
+			ResultSetMetaData rsMetaData = rs.getMetaData();
+			int columns = rsMetaData.getColumnCount();
+			for (int c = 1; c <= columns; c++) {
+				System.out.print(rsMetaData.getColumnName(c));
+				if (c != columns) {
 					System.out.print(" : ");
-				} else {
-					System.out.print("\n");
 				}
 			}
+			System.out.print("\n");
+			while(rs.next()) {
+				for (int i = 1; i <= columns; i++) {
+					System.out.print(rs.getString(i));
+					if (i != columns) {
+						System.out.print(" : ");
+					} else {
+						System.out.print("\n");
+					}
+				}
+			}
+		} finally {
+			close(stmt);
+			release(pooled);
 		}
 	}
 	public static Object getValueFromTable(String tableName, String columnName, String validation) throws Exception {
-		String cmd = "SELECT " + columnName + " FROM " + tableName + " WHERE " + validation;
-		Object obj = null;
-		ResultSet rs = stmt.executeQuery(cmd);
-		if (rs.first()) {
-			obj = rs.getObject(columnName, resultSetMap);
-			if (obj instanceof String) {
-				obj = ((String)obj).replace(":sqt;", "'");
+		PooledConnection pooled = borrow();
+		Statement stmt = null;
+		try {
+			stmt = createStatement(pooled);
+			String cmd = "SELECT " + columnName + " FROM " + tableName + " WHERE " + validation;
+			Object obj = null;
+			ResultSet rs = stmt.executeQuery(cmd);
+			if (rs.first()) {
+				obj = rs.getObject(columnName, resultSetMap);
+				if (obj instanceof String) {
+					obj = ((String)obj).replace(":sqt;", "'");
+				}
 			}
+			return obj;
+		} finally {
+			close(stmt);
+			release(pooled);
 		}
-		return obj;
 	}
 	public static Object getValueFromTable(String tableName, String columnName, String validation, String[] params) throws Exception {
-		Object obj = null;
-		PreparedStatement stmt = connection.prepareStatement("SELECT " + columnName + " FROM " + tableName + " WHERE " + validation);
-		for (int p = 0; p < params.length; p++) {
-			stmt.setString(p+1, params[p]);
-		}
-		stmt.execute();
-		ResultSet rs = stmt.getResultSet();
-		if (rs.first()) {
-			obj = rs.getObject(columnName, resultSetMap);
-			if (obj instanceof String) {
-				obj = ((String)obj).replace(":sqt;", "'");
+		PooledConnection pooled = borrow();
+		ResultSet rs = null;
+		try {
+			Object obj = null;
+			PreparedStatement stmt = pooled.prepareStatement("SELECT " + columnName + " FROM " + tableName + " WHERE " + validation);
+			for (int p = 0; p < params.length; p++) {
+				stmt.setString(p+1, params[p]);
+			}
+			stmt.execute();
+			rs = stmt.getResultSet();
+			if (rs.first()) {
+				obj = rs.getObject(columnName, resultSetMap);
+				if (obj instanceof String) {
+					obj = ((String)obj).replace(":sqt;", "'");
+				}
 			}
+			return obj;
+		} finally {
+			close(rs);
+			release(pooled);
 		}
-		return obj;
 	}
 	public static Object[][] getValuesFromTable(String tableName, String[] args, String validation) throws Exception {
-		Object[][] values = null;
-		ResultSet rs = stmt.executeQuery("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
-		ResultSetMetaData metaData = rs.getMetaData();
-		rs.last();
-		values = new Object[rs.getRow()][metaData.getColumnCount()];
-		rs.beforeFirst();
-		int rw = 0;
-		while(rs.next()) {
-			for (int i = 1; i <= values[0].length; i++) {
-				values[rw][i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
-				if (values[rw][i-1] instanceof String) {
-					values[rw][i-1] = ((String)values[rw][i-1]).replace(":sqt;", "'");
+		PooledConnection pooled = borrow();
+		Statement stmt = null;
+		try {
+			stmt = createStatement(pooled);
+			Object[][] values = null;
+			ResultSet rs = stmt.executeQuery("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
+			ResultSetMetaData metaData = rs.getMetaData();
+			rs.last();
+			values = new Object[rs.getRow()][metaData.getColumnCount()];
+			rs.beforeFirst();
+			int rw = 0;
+			while(rs.next()) {
+				for (int i = 1; i <= values[0].length; i++) {
+					values[rw][i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
+					if (values[rw][i-1] instanceof String) {
+						values[rw][i-1] = ((String)values[rw][i-1]).replace(":sqt;", "'");
+					}
 				}
+				rw++;
 			}
-			rw++;
+			return values;
+		} finally {
+			close(stmt);
+			release(pooled);
 		}
-		return values;
 	}
 	public static Object getObjectsFromTable(Class<?> classType, String tableName, String[] args, String validation) throws Exception {
-		ResultSet rs = stmt.executeQuery("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
-		ResultSetMetaData metaData = rs.getMetaData();
-		rs.last();
-		Object objects = Array.newInstance(classType, rs.getRow());
-		Object[] values = new Object[metaData.getColumnCount()];
-		rs.beforeFirst();
-		int rw = 0;
-		Constructor<?> constructor;
-		while(rs.next()) {
-			for (int i = 1; i <= values.length; i++) {
-				values[i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
-				if (values[i-1] instanceof String) {
-					values[i-1] = ((String)values[i-1]).replace(":sqt;", "'");
+		PooledConnection pooled = borrow();
+		Statement stmt = null;
+		try {
+			stmt = createStatement(pooled);
+			ResultSet rs = stmt.executeQuery("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
+			ResultSetMetaData metaData = rs.getMetaData();
+			rs.last();
+			Object objects = Array.newInstance(classType, rs.getRow());
+			Object[] values = new Object[metaData.getColumnCount()];
+			rs.beforeFirst();
+			int rw = 0;
+			Constructor<?> constructor;
+			while(rs.next()) {
+				for (int i = 1; i <= values.length; i++) {
+					values[i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
+					if (values[i-1] instanceof String) {
+						values[i-1] = ((String)values[i-1]).replace(":sqt;", "'");
+					}
 				}
+				constructor = classType.getConstructor(getObjectClasses(values));
+				Array.set(objects, rw, classType.cast(constructor.newInstance(values)));
+				rw++;
 			}
-			constructor = classType.getConstructor(getObjectClasses(values));
-			Array.set(objects, rw, classType.cast(constructor.newInstance(values)));
-			rw++;
+			return objects;
+		} finally {
+			close(stmt);
+			release(pooled);
 		}
-		return objects;
 	}
 	public static Object getObjectFromTable(Class<?> classType, String tableName, String[] args, String validation, String[] params) throws Exception {
-		PreparedStatement stmt = connection.prepareStatement("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
-		for (int p = 0; p < params.length; p++) {
-			stmt.setString(p+1, params[p]);
-		}
-		stmt.execute();
-		ResultSet rs = stmt.getResultSet();
-		ResultSetMetaData metaData = rs.getMetaData();
-		rs.last();
-		Object obj = null;
-		Object[] values = new Object[metaData.getColumnCount()];
-		if (rs.first()) {
-			for (int i = 1; i <= values.length; i++) {
-				values[i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
-				if (values[i-1] instanceof String) {
-					values[i-1] = ((String)values[i-1]).replace(":sqt;", "'");
+		PooledConnection pooled = borrow();
+		ResultSet rs = null;
+		try {
+			PreparedStatement stmt = pooled.prepareStatement("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
+			for (int p = 0; p < params.length; p++) {
+				stmt.setString(p+1, params[p]);
+			}
+			stmt.execute();
+			rs = stmt.getResultSet();
+			ResultSetMetaData metaData = rs.getMetaData();
+			rs.last();
+			Object obj = null;
+			Object[] values = new Object[metaData.getColumnCount()];
+			if (rs.first()) {
+				for (int i = 1; i <= values.length; i++) {
+					values[i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
+					if (values[i-1] instanceof String) {
+						values[i-1] = ((String)values[i-1]).replace(":sqt;", "'");
+					}
 				}
+				Constructor<?> constructor = classType.getConstructor(getObjectClasses(values));
+				obj = classType.cast(constructor.newInstance(values));
 			}
-			Constructor<?> constructor = classType.getConstructor(getObjectClasses(values));
-			obj = classType.cast(constructor.newInstance(values));
+			return obj;
+		} finally {
+			close(rs);
+			release(pooled);
 		}
-		return obj;
 	}
 	public static Object[][] getValuesFromTable(String tableName, String[] args, String validation, String[] params) throws Exception {
-		Object[][] values = null;
-		PreparedStatement stmt = connection.prepareStatement("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
-		for (int p = 0; p < params.length; p++) {
-			stmt.setString(p+1, params[p]);
-		}
-		stmt.execute();
-		ResultSet rs = stmt.getResultSet();
+		PooledConnection pooled = borrow();
+		ResultSet rs = null;
+		try {
+			Object[][] values = null;
+			PreparedStatement stmt = pooled.prepareStatement("SELECT " + compileString(args) + " FROM " + tableName + " WHERE " + validation);
+			for (int p = 0; p < params.length; p++) {
+				stmt.setString(p+1, params[p]);
+			}
+			stmt.execute();
+			rs = stmt.getResultSet();
 		
-		ResultSetMetaData metaData = rs.getMetaData();
-		rs.last();
-		values = new Object[rs.getRow()][metaData.getColumnCount()];
-		rs.beforeFirst();
-		int rw = 0;
-		while(rs.next()) {
-			for (int i = 1; i <= values[0].length; i++) {
-				values[rw][i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
-				if (values[rw][i-1] instanceof String) {
-					values[rw][i-1] = ((String)values[rw][i-1]).replace(":sqt;", "'");
+			ResultSetMetaData metaData = rs.getMetaData();
+			rs.last();
+			values = new Object[rs.getRow()][metaData.getColumnCount()];
+			rs.beforeFirst();
+			int rw = 0;
+			while(rs.next()) {
+				for (int i = 1; i <= values[0].length; i++) {
+					values[rw][i-1] = rs.getObject(metaData.getColumnName(i), resultSetMap);
+					if (values[rw][i-1] instanceof String) {
+						values[rw][i-1] = ((String)values[rw][i-1]).replace(":sqt;", "'");
+					}
 				}
+				rw++;
 			}
-			rw++;
+			return values;
+		} finally {
+			close(rs);
+			release(pooled);
 		}
-		return values;
 	}
 	private static String compileString(String[] args) {
 		String str = "";
@@ -22,6 +22,7 @@
  */
 package com.stp.util;
 import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.OutputStream;
 import java.io.InputStream;
@@ -29,6 +30,8 @@ import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.ByteArrayOutputStream;
 import java.nio.channels.FileChannel;
 import java.net.URL;
 import java.util.HashMap;
@@ -563,7 +566,14 @@ public class JavaIO {
     public static String convertStringFromBytes(byte[] byteArray) throws IOException {
         return new String(byteArray, "UTF8");
     }
-	public static boolean saveXML(File sFile, XMLObject[] objects) {
+	public static boolean saveXML(File sFile, Object[] objects) {
+		return save(sFile, objects, false);
+	}
+	/** Saves the objects using the compact binary format, which XMLFileUtility.readXMLObjects detects when loading */
+	public static boolean saveBinary(File sFile, Object[] objects) {
+		return save(sFile, objects, true);
+	}
+	private static boolean save(File sFile, Object[] objects, boolean binary) {
 		if (objects.length == 0) {
 			try {
 				return sFile.delete();
@@ -575,6 +585,8 @@ public class JavaIO {
 		BufferedOutputStream out = null;
 		boolean saveExists = false;
 		try {
+			// finish rolling back any interrupted append before the current file is moved aside
+			recoverXML(sFile);
 			// get a temp file
 			tempFile = File.createTempFile(sFile.getName(), null);
 			// delete it, otherwise you cannot rename your existing zip to it.
@@ -589,7 +601,11 @@ public class JavaIO {
 			}
 			FileOutputStream dest = new FileOutputStream(sFile);
 			out = new BufferedOutputStream(dest);
-			XMLFileUtility.saveXMLObjects(out, objects);
+			if (binary) {
+				XMLFileUtility.saveBinaryObjects(out, objects);
+			} else {
+				XMLFileUtility.saveXMLObjects(out, objects);
+			}
 			out.close();
 			return true;
 		} catch (Exception e) {
@@ -607,4 +623,146 @@ public class JavaIO {
 		}
 		return false;
 	}
-}
\ No newline at end of file
+	/** Adds objects to the end of an existing xml save without rewriting the entries already in the file.
+	 *  The closing tag is located by seeking back from the end of the file and only the tail is rewritten.
+	 *  A journal holding the original trailer position is written first so an interrupted append can be
+	 *  rolled back by recoverXML. Binary saves and files without a recognisable trailer are rewritten in full.
+	 */
+	public static boolean appendXML(File sFile, Object[] objects) {
+		if (objects.length == 0) {
+			return true;
+		}
+		if (!sFile.exists() || sFile.length() == 0) {
+			return saveXML(sFile, objects);
+		}
+		File journal = getJournalFile(sFile);
+		RandomAccessFile file = null;
+		try {
+			recoverXML(sFile);
+			file = new RandomAccessFile(sFile, "rw");
+			long trailer = findTrailer(file);
+			if (trailer < 0) {
+				file.close();
+				file = null;
+				return appendByRewrite(sFile, objects);
+			}
+			String rootClass = readRootClass(file);
+			if (!objects[0].getClass().getName().equals(rootClass)) {
+				throw new IOException("Cannot append " + objects[0].getClass().getName() + " objects to a save of " + rootClass);
+			}
+			// Build the new tail in memory first so the file is only touched once the content is ready
+			ByteArrayOutputStream tail = new ByteArrayOutputStream();
+			XMLFileUtility.writeObjectEntries(tail, objects);
+			tail.write(XMLFileUtility.CLOSE_TAG.getBytes("UTF8"));
+			
+			RandomAccessFile log = new RandomAccessFile(journal, "rw");
+			try {
+				log.writeLong(trailer);
+				log.writeLong(file.length());
+				log.getFD().sync();
+			} finally {
+				log.close();
+			}
+			file.seek(trailer);
+			file.write(tail.toByteArray());
+			file.setLength(file.getFilePointer());
+			file.getFD().sync();
+			file.close();
+			file = null;
+			journal.delete();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+			try {
+				if (file != null) {
+					file.close();
+					file = null;
+				}
+				recoverXML(sFile);
+			} catch (Exception ex) {}
+		} finally {
+			try {
+				if (file != null) {
+					file.close();
+				}
+			} catch (Exception ex) {}
+		}
+		return false;
+	}
+	/** Rolls back an append that was interrupted before completing, returns true if a rollback took place */
+	public static boolean recoverXML(File sFile) throws IOException {
+		File journal = getJournalFile(sFile);
+		if (!journal.exists()) {
+			return false;
+		}
+		if (journal.length() < 16) {
+			// The journal was never completed so the save file itself was not modified
+			journal.delete();
+			return false;
+		}
+		RandomAccessFile log = new RandomAccessFile(journal, "r");
+		long trailer;
+		try {
+			trailer = log.readLong();
+			log.readLong();
+		} finally {
+			log.close();
+		}
+		RandomAccessFile file = new RandomAccessFile(sFile, "rw");
+		try {
+			file.setLength(trailer);
+			file.seek(trailer);
+			file.write(XMLFileUtility.CLOSE_TAG.getBytes("UTF8"));
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		journal.delete();
+		return true;
+	}
+	private static File getJournalFile(File sFile) {
+		return new File(sFile.getAbsolutePath() + ".journal");
+	}
+	// Returns the offset of the closing tag when only whitespace follows it, or -1 if the file does not end with one
+	private static long findTrailer(RandomAccessFile file) throws IOException {
+		int window = (int)Math.min(file.length(), 256);
+		byte[] bytes = new byte[window];
+		file.seek(file.length() - window);
+		file.readFully(bytes);
+		String tail = new String(bytes, "ISO-8859-1");
+		int idx = tail.lastIndexOf(XMLFileUtility.CLOSE_TAG);
+		if (idx < 0 || tail.substring(idx + XMLFileUtility.CLOSE_TAG.length()).trim().length() > 0) {
+			return -1;
+		}
+		return file.length() - window + idx;
+	}
+	static String readRootClass(RandomAccessFile file) throws IOException {
+		byte[] bytes = new byte[(int)Math.min(file.length(), 1024)];
+		file.seek(0);
+		file.readFully(bytes);
+		String head = new String(bytes, "UTF8");
+		int root = head.indexOf("<SavedObjects");
+		int s = (root >= 0) ? head.indexOf("class=\"", root) : -1;
+		int e = (s >= 0) ? head.indexOf("\"", s + 7) : -1;
+		return (e >= 0) ? head.substring(s + 7, e) : null;
+	}
+	private static boolean appendByRewrite(File sFile, Object[] objects) throws Exception {
+		InputStream input = new FileInputStream(sFile);
+		Object existing;
+		boolean binary;
+		try {
+			BufferedInputStream buffered = new BufferedInputStream(input);
+			binary = XMLBinaryFormat.isBinary(buffered);
+			existing = XMLFileUtility.readXMLObjects(buffered);
+		} finally {
+			input.close();
+		}
+		int count = Array.getLength(existing);
+		Object[] combined = new Object[count + objects.length];
+		for (int i = 0; i < count; i++) {
+			combined[i] = Array.get(existing, i);
+		}
+		System.arraycopy(objects, 0, combined, count, objects.length);
+		return save(sFile, combined, binary);
+	}
+}
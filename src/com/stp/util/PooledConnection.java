@@ -0,0 +1,135 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a connection lent out by a connection pool ~ 10/19/2026
+ *
+ *  Used by one thread at a time between ConnectionPool.borrow and ConnectionPool.release. Prepared statements are
+ *  kept open for the life of the connection, keyed by their sql text, and the least recently used statement is
+ *  closed once the cache is full.
+ */
+public final class PooledConnection {
+	private static final Logger logger = Logger.getLogger(PooledConnection.class.getName());
+	
+	private final ConnectionPool pool;
+	private final Connection connection;
+	private volatile long lastUsed;
+	private volatile boolean invalid = false;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	
+	PooledConnection(ConnectionPool pool, Connection connection, final int cacheSize) {
+		this.pool = pool;
+		this.connection = connection;
+		this.lastUsed = System.currentTimeMillis();
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > cacheSize) {
+					closeStatement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	/** Returns the cached statement for the sql with its parameters and batch cleared, preparing it on first use.
+	 *  The statement belongs to the cache and must not be closed by the caller, only its result sets.
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+	}
+	/** Returns a cached statement prepared with the Statement.RETURN_GENERATED_KEYS or NO_GENERATED_KEYS flag */
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		String key = (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) ? "keys:" + sql : sql;
+		PreparedStatement statement = statements.get(key);
+		if (statement != null) {
+			try {
+				// a batch left by a call that failed before executing it must not be sent with the next one
+				statement.clearBatch();
+				statement.clearParameters();
+				return statement;
+			} catch (SQLException ex) {
+				// the statement is no longer usable, replace it
+				statements.remove(key);
+				closeStatement(statement);
+			}
+		}
+		if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+			statement = connection.prepareStatement(sql, autoGeneratedKeys);
+		} else {
+			statement = connection.prepareStatement(sql);
+		}
+		statements.put(key, statement);
+		return statement;
+	}
+	public int getCachedStatementCount() {
+		return statements.size();
+	}
+	public ConnectionPool getPool() {
+		return pool;
+	}
+	public Connection getConnection() {
+		return connection;
+	}
+	/** Marks the connection as unusable so it is closed instead of reused when released */
+	public void invalidate() {
+		invalid = true;
+	}
+	boolean isInvalid() {
+		return invalid;
+	}
+	long getLastUsed() {
+		return lastUsed;
+	}
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+	void close() {
+		for (PreparedStatement statement : statements.values()) {
+			closeStatement(statement);
+		}
+		statements.clear();
+		try {
+			connection.close();
+		} catch (Exception ex) {
+			logger.log(Level.FINE, "Error closing database connection: " + ex.getMessage());
+		}
+	}
+	private static void closeStatement(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (Exception ex) {
+			logger.log(Level.FINE, "Error closing prepared statement: " + ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created an annotation processor that writes XMLAdapter classes for fields marked with XMLField ~ 10/19/2026
+ *
+ *  Each class with XMLField members gets a <class name>_XMLAdapter in the same package that dispatches on the
+ *  param name with a string switch and assigns the fields directly, converting primitives without formatAs.
+ */
+@SupportedAnnotationTypes("com.stp.util.XMLField")
+public class XMLAdapterProcessor extends AbstractProcessor {
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Map<TypeElement, ArrayList<VariableElement>> classes = new LinkedHashMap<TypeElement, ArrayList<VariableElement>>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(XMLField.class)) {
+			if (element.getKind() != ElementKind.FIELD) {
+				continue;
+			}
+			Set<Modifier> modifiers = element.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+				error(element, "XMLField members must be non-private, non-final instance fields");
+				continue;
+			}
+			TypeElement owner = (TypeElement)element.getEnclosingElement();
+			ArrayList<VariableElement> fields = classes.get(owner);
+			if (fields == null) {
+				fields = new ArrayList<VariableElement>();
+				classes.put(owner, fields);
+			}
+			fields.add((VariableElement)element);
+		}
+		for (Map.Entry<TypeElement, ArrayList<VariableElement>> entry : classes.entrySet()) {
+			TypeElement owner = entry.getKey();
+			if (owner.getNestingKind() == NestingKind.MEMBER && !owner.getModifiers().contains(Modifier.STATIC)) {
+				error(owner, "Classes with XMLField members must be top level or static nested classes");
+				continue;
+			}
+			try {
+				writeAdapter(owner, entry.getValue());
+			} catch (IOException ex) {
+				error(owner, "Unable to write xml adapter: " + ex.getMessage());
+			}
+		}
+		return true;
+	}
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+	private void writeAdapter(TypeElement owner, ArrayList<VariableElement> fields) throws IOException {
+		String packageName = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(owner).toString();
+		// The adapter is found at runtime by appending the suffix to Class.getName(), so nested classes keep their '$'
+		String adapterName = (packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName) + "_XMLAdapter";
+		String type = owner.getQualifiedName().toString();
+		
+		StringBuilder src = new StringBuilder();
+		if (packageName.length() > 0) {
+			src.append("package ").append(packageName).append(";\n\n");
+		}
+		src.append("/** Generated by com.stp.util.XMLAdapterProcessor, do not edit */\n");
+		src.append("public final class ").append(adapterName).append(" implements com.stp.util.XMLAdapter<").append(type).append("> {\n");
+		src.append("\tprivate static final String[] NAMES = {");
+		for (int f = 0; f < fields.size(); f++) {
+			src.append((f == 0) ? " " : ", ").append(quote(getParamName(fields.get(f))));
+		}
+		src.append(" };\n");
+		src.append("\tpublic ").append(type).append(" newInstance() {\n\t\treturn new ").append(type).append("();\n\t}\n");
+		src.append("\tpublic int getPropertyCount() {\n\t\treturn NAMES.length;\n\t}\n");
+		src.append("\tpublic String getPropertyName(int index) {\n\t\treturn (index >= 0 && index < NAMES.length) ? NAMES[index] : \"none\";\n\t}\n");
+		src.append("\tpublic Object getProperty(").append(type).append(" object, String name) {\n\t\tswitch (name) {\n");
+		for (VariableElement field : fields) {
+			src.append("\t\t\tcase ").append(quote(getParamName(field))).append(": return object.").append(field.getSimpleName()).append(";\n");
+		}
+		src.append("\t\t\tdefault: return null;\n\t\t}\n\t}\n");
+		src.append("\tpublic void setProperty(").append(type).append(" object, String name, Object value, String className) throws Exception {\n");
+		src.append("\t\tif (value == null) {\n\t\t\treturn;\n\t\t}\n\t\tswitch (name) {\n");
+		for (VariableElement field : fields) {
+			src.append("\t\t\tcase ").append(quote(getParamName(field))).append(": object.").append(field.getSimpleName()).append(" = ").append(getConversion(field.asType())).append("; return;\n");
+		}
+		src.append("\t\t\tdefault: return;\n\t\t}\n\t}\n");
+		src.append("}\n");
+		
+		String sourceName = (packageName.length() > 0 ? packageName + "." : "") + adapterName;
+		Writer writer = processingEnv.getFiler().createSourceFile(sourceName, owner).openWriter();
+		try {
+			writer.write(src.toString());
+		} finally {
+			writer.close();
+		}
+	}
+	private static String getParamName(VariableElement field) {
+		String name = field.getAnnotation(XMLField.class).value();
+		return (name.length() > 0) ? name : field.getSimpleName().toString();
+	}
+	// Primitives and strings are converted inline, anything else is passed through XMLFileUtility.formatAs
+	private static String getConversion(TypeMirror type) {
+		switch (type.getKind()) {
+			case BOOLEAN: return "(value instanceof Boolean) ? (Boolean)value : Boolean.parseBoolean(value.toString())";
+			case BYTE: return "(value instanceof Byte) ? (Byte)value : Byte.parseByte(value.toString())";
+			case SHORT: return "(value instanceof Short) ? (Short)value : Short.parseShort(value.toString())";
+			case INT: return "(value instanceof Integer) ? (Integer)value : Integer.parseInt(value.toString())";
+			case LONG: return "(value instanceof Long) ? (Long)value : Long.parseLong(value.toString())";
+			case FLOAT: return "(value instanceof Float) ? (Float)value : Float.parseFloat(value.toString())";
+			case DOUBLE: return "(value instanceof Double) ? (Double)value : Double.parseDouble(value.toString())";
+			case CHAR: return "(value instanceof Character) ? (Character)value : value.toString().charAt(0)";
+			default: break;
+		}
+		String name = type.toString();
+		if (type.getKind() == TypeKind.DECLARED && name.equals("java.lang.String")) {
+			return "value.toString()";
+		}
+		// strip generic arguments, the cast is unchecked in the same way formatAs is
+		int generic = name.indexOf('<');
+		String raw = (generic >= 0) ? name.substring(0, generic) : name;
+		return "(" + name + ")com.stp.util.XMLFileUtility.formatAs(value, " + raw + ".class)";
+	}
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
@@ -0,0 +1,154 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a loader to parse many xml save files concurrently on a bounded thread pool ~ 10/19/2026
+ */
+public class XMLBatchLoader {
+	private static final Logger logger = Logger.getLogger(XMLBatchLoader.class.getName());
+	
+	/** Receives each file as soon as it has been parsed, in completion order rather than request order */
+	public interface Listener {
+		public abstract void fileLoaded(File file, Object objects);
+		public abstract void fileFailed(File file, Exception ex);
+	}
+	
+	private final int threads;
+	
+	public XMLBatchLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	public XMLBatchLoader(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	public int getThreadCount() {
+		return threads;
+	}
+	/** Returns the xml files found directly inside the directory sorted by name */
+	public static File[] listFiles(File directory) {
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().toLowerCase().endsWith(".xml");
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+	public Object[] loadDirectory(File directory) throws InterruptedException {
+		return loadFiles(Arrays.asList(listFiles(directory)));
+	}
+	public void loadDirectory(File directory, Listener listener) throws InterruptedException {
+		loadFiles(Arrays.asList(listFiles(directory)), listener);
+	}
+	/** Parses every file and returns the object arrays in the same order as the list, files that fail to load are left as null */
+	public Object[] loadFiles(List<File> files) throws InterruptedException {
+		Object[] results = new Object[files.size()];
+		if (files.isEmpty()) {
+			return results;
+		}
+		ExecutorService pool = createPool(files.size());
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(files.size());
+			for (File file : files) {
+				futures.add(pool.submit(new LoadTask(file)));
+			}
+			for (int f = 0; f < futures.size(); f++) {
+				try {
+					results[f] = futures.get(f).get();
+				} catch (ExecutionException ex) {
+					logger.log(Level.WARNING, "Failed to load xml file: " + files.get(f) + " " + ex.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+	/** Parses every file and notifies the listener as each one completes, returns once all files have been reported */
+	public void loadFiles(List<File> files, Listener listener) throws InterruptedException {
+		if (files.isEmpty()) {
+			return;
+		}
+		ExecutorService pool = createPool(files.size());
+		try {
+			CompletionService<Object> service = new ExecutorCompletionService<Object>(pool);
+			Map<Future<Object>, File> pending = new HashMap<Future<Object>, File>();
+			for (File file : files) {
+				pending.put(service.submit(new LoadTask(file)), file);
+			}
+			for (int f = 0; f < files.size(); f++) {
+				Future<Object> future = service.take();
+				File file = pending.remove(future);
+				try {
+					listener.fileLoaded(file, future.get());
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					listener.fileFailed(file, (cause instanceof Exception) ? (Exception)cause : ex);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	private ExecutorService createPool(int tasks) {
+		return Executors.newFixedThreadPool(Math.min(threads, tasks));
+	}
+	
+	private static class LoadTask implements Callable<Object> {
+		private final File file;
+		public LoadTask(File file) {
+			this.file = file;
+		}
+		public Object call() throws Exception {
+			InputStream input = new FileInputStream(file);
+			try {
+				return XMLFileUtility.readXMLObjects(input);
+			} finally {
+				input.close();
+			}
+		}
+	}
+}
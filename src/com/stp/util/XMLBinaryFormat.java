@@ -0,0 +1,228 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a compact binary alternative to the xml save format for arrays of XMLObjects ~ 10/19/2026
+ *
+ *  Layout: magic "STPB", format version, root class name, object count, then for each object a list of
+ *  (property ref, class ref, value) entries closed by END. Property names and value class names are written
+ *  in full the first time they appear and referenced by their table index after that.
+ */
+public final class XMLBinaryFormat {
+	private static final Logger logger = Logger.getLogger(XMLBinaryFormat.class.getName());
+	public static final byte[] MAGIC = { 'S', 'T', 'P', 'B' };
+	public static final byte VERSION = 1;
+	
+	private static final int END = -1;
+	private static final int NEW = -2;
+	
+	// Value codecs, primitive wrappers are stored natively and everything else as its string form
+	private static final byte BOOLEAN = 0;
+	private static final byte CHARACTER = 1;
+	private static final byte BYTE = 2;
+	private static final byte SHORT = 3;
+	private static final byte INTEGER = 4;
+	private static final byte LONG = 5;
+	private static final byte FLOAT = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte TEXT = 8;
+	private static final Map<Class<?>, Byte> codecMap = new HashMap<Class<?>, Byte>();
+	static {
+		codecMap.put(Boolean.class, BOOLEAN);
+		codecMap.put(Character.class, CHARACTER);
+		codecMap.put(Byte.class, BYTE);
+		codecMap.put(Short.class, SHORT);
+		codecMap.put(Integer.class, INTEGER);
+		codecMap.put(Long.class, LONG);
+		codecMap.put(Float.class, FLOAT);
+		codecMap.put(Double.class, DOUBLE);
+	}
+	
+	private XMLBinaryFormat() {
+	}
+	/** Checks for the binary header without consuming it, the stream must support mark/reset */
+	public static boolean isBinary(InputStream stream) throws IOException {
+		stream.mark(MAGIC.length);
+		try {
+			for (int m = 0; m < MAGIC.length; m++) {
+				if (stream.read() != MAGIC[m]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			stream.reset();
+		}
+	}
+	public static void writeObjects(OutputStream stream, Object[] xmlObject) throws Exception {
+		if (xmlObject == null || xmlObject.length == 0) {
+			throw new Exception("Invalid object array.");
+		}
+		int count = 0;
+		for (Object obj : xmlObject) {
+			if (obj != null) {
+				count++;
+			}
+		}
+		Map<String, Integer> names = new HashMap<String, Integer>();
+		Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+		stream.write(MAGIC);
+		stream.write(VERSION);
+		writeText(stream, xmlObject[0].getClass().getName());
+		JavaIO.writeInt(stream, count);
+		for (Object item : xmlObject) {
+			if (item == null) {
+				logger.log(Level.INFO, "Skipped writing null object.");
+				continue;
+			}
+			XMLAdapter<Object> adapter = XMLFileUtility.getAdapter(item.getClass());
+			XMLObject obj = (adapter == null) ? XMLFileUtility.asXMLObject(item) : null;
+			int properties = (adapter != null) ? adapter.getPropertyCount() : obj.getPropertyCount();
+			for (int p = 0; p < properties; p++) {
+				String nodeName = (adapter != null) ? adapter.getPropertyName(p) : obj.getPropertyName(p);
+				Object nodeValue = (adapter != null) ? adapter.getProperty(item, nodeName) : obj.getProperty(nodeName);
+				if (nodeValue == null) {
+					logger.log(Level.INFO, "Skipped writing null parameter: " + nodeName);
+					continue;
+				}
+				Integer nameRef = names.get(nodeName);
+				if (nameRef == null) {
+					names.put(nodeName, names.size());
+					JavaIO.writeInt(stream, NEW);
+					writeText(stream, nodeName);
+				} else {
+					JavaIO.writeInt(stream, nameRef);
+				}
+				Byte codec = codecMap.get(nodeValue.getClass());
+				Integer classRef = classes.get(nodeValue.getClass());
+				if (classRef == null) {
+					classes.put(nodeValue.getClass(), classes.size());
+					JavaIO.writeInt(stream, NEW);
+					writeText(stream, nodeValue.getClass().getSimpleName());
+					stream.write((codec != null) ? codec : TEXT);
+				} else {
+					JavaIO.writeInt(stream, classRef);
+				}
+				writeValue(stream, nodeValue, (codec != null) ? codec : TEXT);
+			}
+			JavaIO.writeInt(stream, END);
+		}
+		stream.close();
+	}
+	/** Reads an object array written by writeObjects, the stream is expected to be buffered */
+	public static Object readObjects(InputStream stream) throws Exception {
+		for (int m = 0; m < MAGIC.length; m++) {
+			if (stream.read() != MAGIC[m]) {
+				throw new IOException("Missing binary save header.");
+			}
+		}
+		int version = stream.read();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary save version: " + version);
+		}
+		Class<?> objClass = Class.forName(readText(stream));
+		int count = JavaIO.readInt(stream);
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<String> classNames = new ArrayList<String>();
+		ArrayList<Byte> codecs = new ArrayList<Byte>();
+		XMLAdapter<Object> adapter = XMLFileUtility.getAdapter(objClass);
+		Object xmlObjects = Array.newInstance(objClass, count);
+		for (int i = 0; i < count; i++) {
+			Object object = (adapter != null) ? adapter.newInstance() : objClass.newInstance();
+			int nameRef = JavaIO.readInt(stream);
+			while (nameRef != END) {
+				if (nameRef == NEW) {
+					nameRef = names.size();
+					names.add(readText(stream));
+				}
+				int classRef = JavaIO.readInt(stream);
+				if (classRef == NEW) {
+					classRef = classNames.size();
+					classNames.add(readText(stream));
+					codecs.add((byte)stream.read());
+				}
+				Object value = readValue(stream, codecs.get(classRef));
+				XMLFileUtility.setProperty(object, adapter, names.get(nameRef), value, classNames.get(classRef));
+				nameRef = JavaIO.readInt(stream);
+			}
+			Array.set(xmlObjects, i, object);
+		}
+		return xmlObjects;
+	}
+	private static void writeValue(OutputStream stream, Object value, byte codec) throws IOException {
+		switch (codec) {
+			case BOOLEAN: JavaIO.writeBoolean(stream, (Boolean)value); return;
+			case CHARACTER: JavaIO.writeShort(stream, (short)((Character)value).charValue()); return;
+			case BYTE: stream.write((Byte)value); return;
+			case SHORT: JavaIO.writeShort(stream, (Short)value); return;
+			case INTEGER: JavaIO.writeInt(stream, (Integer)value); return;
+			case LONG: JavaIO.writeLong(stream, (Long)value); return;
+			case FLOAT: JavaIO.writeFloat(stream, (Float)value); return;
+			case DOUBLE: JavaIO.writeDouble(stream, (Double)value); return;
+			default: writeText(stream, value.toString()); return;
+		}
+	}
+	private static Object readValue(InputStream stream, byte codec) throws IOException {
+		switch (codec) {
+			case BOOLEAN: return JavaIO.readBoolean(stream);
+			case CHARACTER: return (char)JavaIO.readShort(stream);
+			case BYTE: return (byte)stream.read();
+			case SHORT: return JavaIO.readShort(stream);
+			case INTEGER: return JavaIO.readInt(stream);
+			case LONG: return JavaIO.readLong(stream);
+			case FLOAT: return JavaIO.readFloat(stream);
+			case DOUBLE: return JavaIO.readDouble(stream);
+			default: return readText(stream);
+		}
+	}
+	// JavaIO.writeString is limited to a short length prefix, so text values carry a full int length
+	private static void writeText(OutputStream stream, String text) throws IOException {
+		byte[] bytes = JavaIO.convertToBytes(text);
+		JavaIO.writeInt(stream, bytes.length);
+		stream.write(bytes);
+	}
+	private static String readText(InputStream stream) throws IOException {
+		byte[] bytes = new byte[JavaIO.readInt(stream)];
+		int offset = 0;
+		while (offset < bytes.length) {
+			int len = stream.read(bytes, offset, bytes.length - offset);
+			if (len < 0) {
+				throw new EOFException("Unexpected end of binary save file.");
+			}
+			offset += len;
+		}
+		return JavaIO.convertStringFromBytes(bytes);
+	}
+}
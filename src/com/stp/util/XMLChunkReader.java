@@ -0,0 +1,136 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a chunked reader that streams objects from large saves to a worker pool in batches ~ 10/19/2026
+ *
+ *  Objects are read with XMLQuery and grouped into batches that are handed to the consumer on a fixed pool.
+ *  The reader blocks once the configured number of batches are waiting or running, so memory stays bounded
+ *  by batchSize * maxPending objects regardless of the size of the file.
+ */
+public class XMLChunkReader {
+	/** Called from the worker threads, possibly concurrently, once for every batch */
+	public interface Consumer {
+		public abstract void consume(List<Object> batch) throws Exception;
+	}
+	
+	private final int batchSize;
+	private final int maxPending;
+	private final int threads;
+	private XMLQuery query = new XMLQuery();
+	
+	public XMLChunkReader(int batchSize) {
+		this(batchSize, Runtime.getRuntime().availableProcessors() * 2, Runtime.getRuntime().availableProcessors());
+	}
+	public XMLChunkReader(int batchSize, int maxPending, int threads) {
+		this.batchSize = Math.max(1, batchSize);
+		this.maxPending = Math.max(1, maxPending);
+		this.threads = Math.max(1, Math.min(threads, this.maxPending));
+	}
+	/** Applies the query's conditions and projection while reading, by default every object is delivered */
+	public void setQuery(XMLQuery query) {
+		this.query = (query != null) ? query : new XMLQuery();
+	}
+	/** Streams the save to the consumer and returns the number of objects delivered once every batch has completed.
+	 *  The first exception thrown by the consumer stops the read and is rethrown here.
+	 */
+	public long read(InputStream stream, Consumer consumer) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		BatchListener listener = new BatchListener(pool, consumer);
+		try {
+			query.execute(stream, listener);
+			if (!listener.batch.isEmpty() && listener.failure.get() == null) {
+				listener.submit();
+			}
+			// every permit is back once the last batch has finished
+			listener.pending.acquire(maxPending);
+			listener.pending.release(maxPending);
+		} finally {
+			pool.shutdownNow();
+		}
+		if (listener.interrupted) {
+			throw new InterruptedException("Chunked read interrupted.");
+		}
+		Exception ex = listener.failure.get();
+		if (ex != null) {
+			throw ex;
+		}
+		return listener.delivered;
+	}
+	
+	private class BatchListener implements XMLQuery.Listener {
+		private final ExecutorService pool;
+		private final Consumer consumer;
+		private final Semaphore pending = new Semaphore(maxPending);
+		private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		private ArrayList<Object> batch = new ArrayList<Object>(batchSize);
+		private long delivered = 0;
+		private boolean interrupted = false;
+		
+		public BatchListener(ExecutorService pool, Consumer consumer) {
+			this.pool = pool;
+			this.consumer = consumer;
+		}
+		public boolean objectFound(Object object) {
+			batch.add(object);
+			return (batch.size() < batchSize) || submit();
+		}
+		// Blocks while maxPending batches are outstanding, returns false when reading should stop
+		public boolean submit() {
+			try {
+				pending.acquire();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+				return false;
+			}
+			if (failure.get() != null) {
+				pending.release();
+				return false;
+			}
+			final List<Object> work = batch;
+			delivered += work.size();
+			batch = new ArrayList<Object>(batchSize);
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						consumer.consume(work);
+					} catch (Exception ex) {
+						failure.compareAndSet(null, ex);
+					} finally {
+						pending.release();
+					}
+				}
+			});
+			return true;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a saver that writes only the objects that changed since the last save ~ 10/19/2026
+ *
+ *  Objects are identified by the value of a key property and fingerprinted by a hash of their xml entry. Each
+ *  save appends put and delete records for the objects whose fingerprint changed to a change log next to the
+ *  base file. Once the log grows past the compaction ratio the full array is written as a fresh base file.
+ *  The log starts with a fingerprint of the base file it belongs to and is ignored when that no longer matches,
+ *  so a log left behind by an interrupted compaction is never replayed over the newer base.
+ */
+public class XMLDeltaSaver {
+	private static final Logger logger = Logger.getLogger(XMLDeltaSaver.class.getName());
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	private static final int LOG_MAGIC = 0x5354504C;
+	
+	private final File basefile;
+	private final File deltafile;
+	private final String keyProperty;
+	private HashMap<String, Long> hashes = null;
+	private Class<?> objClass = null;
+	private int deltaRecords = 0;
+	// Fingerprint of the base file the change log applies to, written at the start of the log
+	private long baseHash = 0L;
+	private double compactRatio = 0.5;
+	
+	public XMLDeltaSaver(File basefile, String keyProperty) {
+		this.basefile = basefile;
+		this.deltafile = new File(basefile.getAbsolutePath() + ".delta");
+		this.keyProperty = keyProperty;
+	}
+	public File getDeltaFile() {
+		return deltafile;
+	}
+	/** Compacts once the change log holds more records than this fraction of the object count */
+	public void setCompactRatio(double ratio) {
+		this.compactRatio = ratio;
+	}
+	public int getDeltaRecords() {
+		return deltaRecords;
+	}
+	/** Loads the base file with the change log applied and remembers each object's fingerprint */
+	public synchronized Object load() throws Exception {
+		byte[] bytes = readFile(basefile);
+		Object base = XMLFileUtility.readXMLObjects(new ByteArrayInputStream(bytes));
+		baseHash = fingerprint(bytes);
+		objClass = base.getClass().getComponentType();
+		LinkedHashMap<String, Object> objects = new LinkedHashMap<String, Object>();
+		hashes = new HashMap<String, Long>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		for (int i = 0; i < Array.getLength(base); i++) {
+			Object obj = Array.get(base, i);
+			String key = getKey(obj);
+			objects.put(key, obj);
+			hashes.put(key, fingerprint(entry(obj, buffer)));
+		}
+		deltaRecords = 0;
+		if (deltafile.exists()) {
+			byte[] records = readFile(deltafile);
+			ByteArrayInputStream remaining = new ByteArrayInputStream(records);
+			DataInputStream log = new DataInputStream(remaining);
+			int good = 0;
+			try {
+				if (log.readInt() != LOG_MAGIC || log.readLong() != baseHash) {
+					logger.log(Level.WARNING, "Ignoring change log written for another base file: " + deltafile);
+				} else {
+					good = records.length - remaining.available();
+					while (true) {
+						byte op = log.readByte();
+						String key = log.readUTF();
+						if (op == PUT) {
+							byte[] entry = new byte[log.readInt()];
+							log.readFully(entry);
+							objects.put(key, XMLFileUtility.readXMLFragment(entry, objClass));
+							hashes.put(key, fingerprint(entry));
+						} else {
+							objects.remove(key);
+							hashes.remove(key);
+						}
+						deltaRecords++;
+						good = records.length - remaining.available();
+					}
+				}
+			} catch (EOFException ex) {
+				// end of the log, or a record cut short by an interrupted save
+			}
+			if (good < records.length) {
+				// drop the partial record so later saves append after the last complete one
+				truncate(deltafile, good);
+			}
+		}
+		Object result = Array.newInstance(objClass, objects.size());
+		int s = 0;
+		for (Object obj : objects.values()) {
+			Array.set(result, s++, obj);
+		}
+		return result;
+	}
+	/** Records the differences from the last save or load, writing a full base file when no state is known yet */
+	public synchronized boolean save(Object[] objects) {
+		Class<?> first = firstClass(objects);
+		if (hashes == null || first == null || (objClass != null && !objClass.equals(first))) {
+			return compact(objects);
+		}
+		try {
+			ByteArrayOutputStream changes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(changes);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			HashMap<String, Long> current = new HashMap<String, Long>(objects.length * 2);
+			int records = 0;
+			for (Object obj : objects) {
+				if (obj == null) {
+					continue;
+				}
+				String key = getKey(obj);
+				byte[] entry = entry(obj, buffer);
+				long hash = fingerprint(entry);
+				current.put(key, hash);
+				Long previous = hashes.get(key);
+				if (previous == null || previous != hash) {
+					out.writeByte(PUT);
+					out.writeUTF(key);
+					out.writeInt(entry.length);
+					out.write(entry);
+					records++;
+				}
+			}
+			for (String key : hashes.keySet()) {
+				if (!current.containsKey(key)) {
+					out.writeByte(DELETE);
+					out.writeUTF(key);
+					records++;
+				}
+			}
+			if (deltaRecords + records > objects.length * compactRatio) {
+				return compact(objects);
+			}
+			if (records > 0) {
+				long length = deltafile.length();
+				FileOutputStream log = new FileOutputStream(deltafile, true);
+				try {
+					if (length == 0) {
+						DataOutputStream header = new DataOutputStream(log);
+						header.writeInt(LOG_MAGIC);
+						header.writeLong(baseHash);
+						header.flush();
+					}
+					log.write(changes.toByteArray());
+					log.getFD().sync();
+				} catch (IOException ex) {
+					// cut off the partial records so the log still matches the hashes of the last good save
+					log.close();
+					truncate(deltafile, length);
+					throw ex;
+				} finally {
+					log.close();
+				}
+			}
+			hashes = current;
+			deltaRecords += records;
+			return true;
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "Delta save failed: " + basefile + " " + ex.getMessage());
+			return false;
+		}
+	}
+	/** Writes the objects as a new base file and clears the change log */
+	public synchronized boolean compact(Object[] objects) {
+		// the base file takes its root class from the first element, so nulls are dropped rather than skipped
+		ArrayList<Object> present = new ArrayList<Object>(objects.length);
+		for (Object obj : objects) {
+			if (obj != null) {
+				present.add(obj);
+			}
+		}
+		objects = present.toArray();
+		if (!JavaIO.saveXML(basefile, objects)) {
+			return false;
+		}
+		deltafile.delete();
+		deltaRecords = 0;
+		try {
+			baseHash = fingerprint(readFile(basefile));
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			HashMap<String, Long> current = new HashMap<String, Long>(objects.length * 2);
+			for (Object obj : objects) {
+				if (obj != null) {
+					current.put(getKey(obj), fingerprint(entry(obj, buffer)));
+				}
+			}
+			hashes = current;
+			objClass = firstClass(objects);
+		} catch (Exception ex) {
+			// the next save writes a full base again
+			hashes = null;
+		}
+		return true;
+	}
+	private static Class<?> firstClass(Object[] objects) {
+		for (Object obj : objects) {
+			if (obj != null) {
+				return obj.getClass();
+			}
+		}
+		return null;
+	}
+	private static byte[] readFile(File file) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+	private String getKey(Object obj) throws Exception {
+		XMLAdapter<Object> adapter = XMLFileUtility.getAdapter(obj.getClass());
+		Object key = (adapter != null) ? adapter.getProperty(obj, keyProperty) : XMLFileUtility.asXMLObject(obj).getProperty(keyProperty);
+		if (key == null) {
+			throw new Exception("Object is missing key property: " + keyProperty);
+		}
+		return key.toString();
+	}
+	private static byte[] entry(Object obj, ByteArrayOutputStream buffer) throws IOException {
+		buffer.reset();
+		XMLFileUtility.writeObjectEntries(buffer, new Object[] { obj });
+		return buffer.toByteArray();
+	}
+	// 64 bit FNV-1a over the entry bytes
+	private static long fingerprint(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
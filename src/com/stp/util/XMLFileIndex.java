@@ -0,0 +1,351 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created an offset index over xml save files so single objects can be loaded on demand ~ 10/19/2026
+ *
+ *  The index records where each <object> element starts and how long it is, optionally keyed by the value of one
+ *  property. It is kept in a sidecar file next to the save and rebuilt whenever the save file's size or
+ *  modification time no longer match.
+ */
+public class XMLFileIndex implements Closeable {
+	private static final Logger logger = Logger.getLogger(XMLFileIndex.class.getName());
+	private static final int MAGIC = 0x53545049; // STPI
+	private static final int VERSION = 1;
+	private static final byte[] OPEN_TAG = { '<', 'o', 'b', 'j', 'e', 'c', 't' };
+	private static final byte[] CLOSE_TAG = { '<', '/', 'o', 'b', 'j', 'e', 'c', 't', '>' };
+	
+	/** Stands in for an indexed object and parses it from the save file the first time any property is requested */
+	public static class LazyObject implements XMLObject {
+		private final XMLFileIndex index;
+		private final int position;
+		private XMLObject object = null;
+		
+		private LazyObject(XMLFileIndex index, int position) {
+			this.index = index;
+			this.position = position;
+		}
+		public int getPosition() {
+			return position;
+		}
+		public String getKey() {
+			return index.getKey(position);
+		}
+		public synchronized boolean isLoaded() {
+			return object != null;
+		}
+		public synchronized XMLObject getObject() {
+			if (object == null) {
+				try {
+					object = (XMLObject)index.load(position);
+				} catch (Exception ex) {
+					throw new IllegalStateException("Failed to load indexed object " + position + " from " + index.getSaveFile(), ex);
+				}
+			}
+			return object;
+		}
+		public int getPropertyCount() {
+			return getObject().getPropertyCount();
+		}
+		public String getPropertyName(int index) {
+			return getObject().getPropertyName(index);
+		}
+		public Object getProperty(String name) {
+			return getObject().getProperty(name);
+		}
+		public void setProperty(String name, Object value, String className) {
+			getObject().setProperty(name, value, className);
+		}
+	}
+	
+	private final File savefile;
+	private final String keyProperty;
+	private final Class<?> objClass;
+	private final long[] offsets;
+	private final int[] lengths;
+	private final String[] keys;
+	private final Map<String, Integer> keyMap = new HashMap<String, Integer>();
+	private RandomAccessFile reader = null;
+	
+	private XMLFileIndex(File savefile, String keyProperty, Class<?> objClass, long[] offsets, int[] lengths, String[] keys) {
+		this.savefile = savefile;
+		this.keyProperty = keyProperty;
+		this.objClass = objClass;
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.keys = keys;
+		if (keys != null) {
+			for (int k = keys.length - 1; k >= 0; k--) {
+				if (keys[k] != null) {
+					keyMap.put(keys[k], k);
+				}
+			}
+		}
+	}
+	public static File getIndexFile(File savefile) {
+		return new File(savefile.getAbsolutePath() + ".idx");
+	}
+	public static XMLFileIndex open(File savefile) throws Exception {
+		return open(savefile, null);
+	}
+	/** Loads the sidecar index if it is still current for the save file, otherwise scans the file and writes a new one */
+	public static XMLFileIndex open(File savefile, String keyProperty) throws Exception {
+		File indexFile = getIndexFile(savefile);
+		if (indexFile.exists()) {
+			try {
+				XMLFileIndex index = readIndex(savefile, indexFile, keyProperty);
+				if (index != null) {
+					return index;
+				}
+			} catch (IOException ex) {
+				logger.log(Level.INFO, "Rebuilding unreadable index: " + indexFile + " " + ex.getMessage());
+			}
+		}
+		XMLFileIndex index = build(savefile, keyProperty);
+		try {
+			index.writeIndex(indexFile);
+		} catch (IOException ex) {
+			logger.log(Level.WARNING, "Unable to write index file: " + indexFile + " " + ex.getMessage());
+		}
+		return index;
+	}
+	/** Scans the save file for object boundaries without parsing the objects themselves */
+	public static XMLFileIndex build(File savefile, String keyProperty) throws Exception {
+		Class<?> objClass = readRootClass(savefile);
+		long[] offsets = new long[64];
+		int[] lengths = new int[64];
+		String[] keys = (keyProperty != null) ? new String[64] : null;
+		int count = 0;
+		
+		ByteArrayOutputStream current = (keyProperty != null) ? new ByteArrayOutputStream() : null;
+		byte[] buffer = new byte[65536];
+		long base = 0;
+		long start = -1;
+		int openMatch = 0;
+		int closeMatch = 0;
+		InputStream input = new FileInputStream(savefile);
+		try {
+			int len;
+			while ((len = input.read(buffer)) > 0) {
+				for (int b = 0; b < len; b++) {
+					byte ch = buffer[b];
+					if (start < 0) {
+						if (openMatch == OPEN_TAG.length) {
+							// the tag name must end here so elements such as <objects> are not mistaken for entries
+							if (ch == ' ' || ch == '>' || ch == '\t' || ch == '\n' || ch == '\r') {
+								start = base + b - OPEN_TAG.length;
+								if (current != null) {
+									current.reset();
+									current.write(OPEN_TAG, 0, OPEN_TAG.length);
+								}
+							}
+							openMatch = 0;
+						} else if (ch == OPEN_TAG[openMatch]) {
+							openMatch++;
+						} else {
+							openMatch = (ch == OPEN_TAG[0]) ? 1 : 0;
+						}
+						if (start < 0) {
+							continue;
+						}
+					}
+					if (current != null) {
+						current.write(ch);
+					}
+					if (ch == CLOSE_TAG[closeMatch]) {
+						closeMatch++;
+					} else {
+						closeMatch = (ch == CLOSE_TAG[0]) ? 1 : 0;
+					}
+					if (closeMatch == CLOSE_TAG.length) {
+						if (count == offsets.length) {
+							offsets = Arrays.copyOf(offsets, count * 2);
+							lengths = Arrays.copyOf(lengths, count * 2);
+							if (keys != null) {
+								keys = Arrays.copyOf(keys, count * 2);
+							}
+						}
+						offsets[count] = start;
+						lengths[count] = (int)(base + b + 1 - start);
+						if (keys != null) {
+							keys[count] = extractKey(current.toString("UTF8"), keyProperty);
+						}
+						count++;
+						start = -1;
+						closeMatch = 0;
+					}
+				}
+				base += len;
+			}
+		} finally {
+			input.close();
+		}
+		return new XMLFileIndex(savefile, keyProperty, objClass, Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), (keys != null) ? Arrays.copyOf(keys, count) : null);
+	}
+	private static Class<?> readRootClass(File savefile) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(savefile, "r");
+		try {
+			String rootClass = JavaIO.readRootClass(file);
+			if (rootClass == null) {
+				throw new IOException("Not an xml save file: " + savefile);
+			}
+			return Class.forName(rootClass);
+		} finally {
+			file.close();
+		}
+	}
+	private static String extractKey(String element, String keyProperty) {
+		String tag = "<param name=\"" + keyProperty + "\"";
+		int p = element.indexOf(tag);
+		int s = (p >= 0) ? element.indexOf('>', p + tag.length()) : -1;
+		int e = (s >= 0) ? element.indexOf("</param>", s) : -1;
+		return (e >= 0) ? XMLFileUtility.decode(element.substring(s + 1, e)) : null;
+	}
+	private static XMLFileIndex readIndex(File savefile, File indexFile, String keyProperty) throws Exception {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				return null;
+			}
+			if (input.readLong() != savefile.length() || input.readLong() != savefile.lastModified()) {
+				return null;
+			}
+			String storedKey = input.readBoolean() ? input.readUTF() : null;
+			if ((keyProperty == null) ? storedKey != null : !keyProperty.equals(storedKey)) {
+				return null;
+			}
+			Class<?> objClass = Class.forName(input.readUTF());
+			int count = input.readInt();
+			long[] offsets = new long[count];
+			int[] lengths = new int[count];
+			String[] keys = (keyProperty != null) ? new String[count] : null;
+			for (int i = 0; i < count; i++) {
+				offsets[i] = input.readLong();
+				lengths[i] = input.readInt();
+				if (keys != null && input.readBoolean()) {
+					keys[i] = input.readUTF();
+				}
+			}
+			return new XMLFileIndex(savefile, keyProperty, objClass, offsets, lengths, keys);
+		} finally {
+			input.close();
+		}
+	}
+	private void writeIndex(File indexFile) throws IOException {
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(savefile.length());
+			output.writeLong(savefile.lastModified());
+			output.writeBoolean(keyProperty != null);
+			if (keyProperty != null) {
+				output.writeUTF(keyProperty);
+			}
+			output.writeUTF(objClass.getName());
+			output.writeInt(offsets.length);
+			for (int i = 0; i < offsets.length; i++) {
+				output.writeLong(offsets[i]);
+				output.writeInt(lengths[i]);
+				if (keys != null) {
+					output.writeBoolean(keys[i] != null);
+					if (keys[i] != null) {
+						output.writeUTF(keys[i]);
+					}
+				}
+			}
+		} finally {
+			output.close();
+		}
+	}
+	public File getSaveFile() {
+		return savefile;
+	}
+	public String getKeyProperty() {
+		return keyProperty;
+	}
+	public Class<?> getObjectClass() {
+		return objClass;
+	}
+	public int size() {
+		return offsets.length;
+	}
+	public long getOffset(int position) {
+		return offsets[position];
+	}
+	public String getKey(int position) {
+		return (keys != null) ? keys[position] : null;
+	}
+	/** Returns the position of the first object whose key property equals the key, or -1 */
+	public int indexOf(String key) {
+		Integer position = keyMap.get(key);
+		return (position != null) ? position : -1;
+	}
+	public LazyObject get(int position) {
+		if (position < 0 || position >= offsets.length) {
+			throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + offsets.length);
+		}
+		return new LazyObject(this, position);
+	}
+	public LazyObject find(String key) {
+		int position = indexOf(key);
+		return (position >= 0) ? get(position) : null;
+	}
+	/** Reads and parses the object at the given position straight away */
+	public Object load(int position) throws Exception {
+		byte[] fragment = new byte[lengths[position]];
+		synchronized (this) {
+			if (reader == null) {
+				reader = new RandomAccessFile(savefile, "r");
+			}
+			reader.seek(offsets[position]);
+			reader.readFully(fragment);
+		}
+		return XMLFileUtility.readXMLFragment(fragment, objClass);
+	}
+	public synchronized void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.w3c.dom.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.lang.reflect.Constructor;
@@ -38,10 +39,65 @@ import java.lang.reflect.Array;
  */
 public final class XMLFileUtility {
 	public static final long serialVersionUID = 1L;
+	public static final String CLOSE_TAG = "</SavedObjects>";
 	private static final Logger logger = Logger.getLogger(XMLFileUtility.class.getName());
 	private static final Map<String, Class<?>> typeMap = new HashMap<String, Class<?>>();
 	private static final Map<Class<?>, Class<?>> primMap = new HashMap<Class<?>, Class<?>>();
 	private static final Map<Integer, String> charMap = new HashMap<Integer, String>();
+	private static final Map<String, Integer> entityMap = new HashMap<String, Integer>();
+	private static final ConcurrentHashMap<Class<?>, Object> adapters = new ConcurrentHashMap<Class<?>, Object>();
+	private static final Object NO_ADAPTER = new Object();
+	private static final ConcurrentHashMap<Class<?>, Converter> converters = new ConcurrentHashMap<Class<?>, Converter>();
+	private static final int STRING = 0;
+	private static final int DOUBLE = 1;
+	private static final int FLOAT = 2;
+	private static final int LONG = 3;
+	private static final int INTEGER = 4;
+	private static final int SHORT = 5;
+	private static final int BYTE = 6;
+	private static final int BOOLEAN = 7;
+	private static final int SQL_DATE = 8;
+	private static final int DATE = 9;
+	private static final int COLOR = 10;
+	private static final int HASHMAP = 11;
+	static {
+		converters.put(String.class, new BasicConverter(STRING));
+		converters.put(Double.TYPE, new BasicConverter(DOUBLE));
+		converters.put(Double.class, new BasicConverter(DOUBLE));
+		converters.put(Float.TYPE, new BasicConverter(FLOAT));
+		converters.put(Float.class, new BasicConverter(FLOAT));
+		converters.put(Long.TYPE, new BasicConverter(LONG));
+		converters.put(Long.class, new BasicConverter(LONG));
+		converters.put(Integer.TYPE, new BasicConverter(INTEGER));
+		converters.put(Integer.class, new BasicConverter(INTEGER));
+		converters.put(Short.TYPE, new BasicConverter(SHORT));
+		converters.put(Short.class, new BasicConverter(SHORT));
+		converters.put(Byte.TYPE, new BasicConverter(BYTE));
+		converters.put(Byte.class, new BasicConverter(BYTE));
+		converters.put(Boolean.TYPE, new BasicConverter(BOOLEAN));
+		converters.put(Boolean.class, new BasicConverter(BOOLEAN));
+		converters.put(java.sql.Date.class, new BasicConverter(SQL_DATE));
+		converters.put(java.util.Date.class, new BasicConverter(DATE));
+		converters.put(Color.class, new BasicConverter(COLOR));
+		converters.put(HashMap.class, new BasicConverter(HASHMAP));
+	}
+	
+	/** Turns a value read from a save file, usually its text form, into an instance of the target class */
+	public interface Converter {
+		public abstract Object convert(Object obj) throws Exception;
+	}
+	// DocumentBuilder is not thread safe, so each thread keeps and reuses its own parser
+	private static final ThreadLocal<DocumentBuilder> parsers = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			} catch (Exception ex) {
+				logger.log(Level.WARNING, "Unable to create xml parser: " + ex.getMessage());
+				return null;
+			}
+		}
+	};
     static {
 		try {
 			typeMap.put("Byte", Class.forName("java.lang.Byte"));
@@ -168,11 +224,31 @@ public final class XMLFileUtility {
 			charMap.put(253, "&yacute;");
 			charMap.put(254, "&thorn;");
 			charMap.put(255, "&yuml;");
+			for (Map.Entry<Integer, String> entry : charMap.entrySet()) {
+				entityMap.put(entry.getValue(), entry.getKey());
+			}
 		} catch (Exception e) { e.printStackTrace(); }
 	}
 	public static void registerObject(String className, Class cls) {
 		typeMap.put(className, cls);
 	}
+	public static void registerAdapter(Class<?> cls, XMLAdapter<?> adapter) {
+		adapters.put(cls, adapter);
+	}
+	/** Returns the adapter registered or generated for the class, generated adapters are located by name on first use */
+	@SuppressWarnings("unchecked")
+	public static XMLAdapter<Object> getAdapter(Class<?> cls) {
+		Object adapter = adapters.get(cls);
+		if (adapter == null) {
+			try {
+				adapter = Class.forName(cls.getName() + "_XMLAdapter", true, cls.getClassLoader()).newInstance();
+			} catch (Exception ex) {
+				adapter = NO_ADAPTER;
+			}
+			adapters.putIfAbsent(cls, adapter);
+		}
+		return (adapter instanceof XMLAdapter) ? (XMLAdapter<Object>)adapter : null;
+	}
 	public static Object readXMLObject(InputStream stream) {
 		try {
 			Object array = readXMLObjects(stream);
@@ -181,8 +257,19 @@ public final class XMLFileUtility {
 			return null;
 		}
 	}
+	/** Reads an object array from either the xml text format or the binary format, detected from the file header */
 	public static Object readXMLObjects(InputStream stream) throws Exception {
-		DocumentBuilder parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		if (!stream.markSupported()) {
+			stream = new BufferedInputStream(stream);
+		}
+		if (XMLBinaryFormat.isBinary(stream)) {
+			return XMLBinaryFormat.readObjects(stream);
+		}
+		DocumentBuilder parser = parsers.get();
+		if (parser == null) {
+			parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		}
+		parser.reset();
 		Document doc = parser.parse(stream);
 		NodeList rootList = doc.getElementsByTagName("SavedObjects");
 		ArrayList<Object> nodes = new ArrayList<Object>();
@@ -205,26 +292,26 @@ public final class XMLFileUtility {
 		}
 		return xmlObjects;
 	}
+	// Parses a single <object> element cut out of a save file
+	static Object readXMLFragment(byte[] fragment, Class<?> objClass) throws Exception {
+		DocumentBuilder parser = parsers.get();
+		if (parser == null) {
+			parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		}
+		parser.reset();
+		Document doc = parser.parse(new ByteArrayInputStream(fragment));
+		return getObject(doc.getDocumentElement(), objClass);
+	}
 	private static Object getObject(Node child, Class<?> childClass) throws Exception {
-		Constructor<?> constructor = null;
-		Class<?> valClass;
 		NodeList valueList = child.getChildNodes();
-		if (XMLObject.class.isAssignableFrom(childClass)) {
-			XMLObject object = (XMLObject)childClass.newInstance();
+		XMLAdapter<Object> adapter = getAdapter(childClass);
+		if (adapter != null || XMLObject.class.isAssignableFrom(childClass)) {
+			Object object = (adapter != null) ? adapter.newInstance() : childClass.newInstance();
 			for (int v = 0; v < valueList.getLength(); v++) {
 				if (valueList.item(v).getNodeType() == Node.ELEMENT_NODE) {
 					Node nodeClass = valueList.item(v).getAttributes().getNamedItem("class");
 					Node nodeName = valueList.item(v).getAttributes().getNamedItem("name");
-					valClass = (nodeClass != null) ? typeMap.get(nodeClass.getNodeValue()) : null;
-					if (valClass != null) {
-						try {
-							object.setProperty(nodeName.getNodeValue(), valClass.cast(formatAs(valueList.item(v).getTextContent(), valClass)), valClass.getSimpleName());
-						} catch (Exception ex) {
-							logger.log(Level.WARNING, childClass.getSimpleName() + " | Node: " + nodeName + " | Failure to cast object as: " + valClass);
-						}
-					} else {
-						object.setProperty(nodeName.getNodeValue(), valueList.item(v).getTextContent(), nodeClass.getNodeValue());
-					}
+					setProperty(object, adapter, nodeName.getNodeValue(), valueList.item(v).getTextContent(), (nodeClass != null) ? nodeClass.getNodeValue() : null);
 				}
 			}
 			return object;
@@ -237,6 +324,31 @@ public final class XMLFileUtility {
 			}
 		}
 	}
+	// Converts a loaded value to the registered class named in the save file before handing it to the object,
+	// classes with a generated adapter receive the raw value and convert it themselves
+	static void setProperty(Object object, XMLAdapter<Object> adapter, String name, Object value, String className) {
+		if (adapter != null) {
+			try {
+				adapter.setProperty(object, name, value, className);
+			} catch (Exception ex) {
+				logger.log(Level.WARNING, object.getClass().getSimpleName() + " | Node: " + name + " | Failure to convert value: " + value);
+			}
+			return;
+		}
+		Class<?> valClass = (className != null) ? typeMap.get(className) : null;
+		if (valClass != null) {
+			try {
+				((XMLObject)object).setProperty(name, valClass.cast(formatAs(value, valClass)), valClass.getSimpleName());
+			} catch (Exception ex) {
+				logger.log(Level.WARNING, object.getClass().getSimpleName() + " | Node: " + name + " | Failure to cast object as: " + valClass);
+			}
+		} else {
+			((XMLObject)object).setProperty(name, value, className);
+		}
+	}
+	public static void saveBinaryObjects(OutputStream stream, Object[] xmlObject) throws Exception {
+		XMLBinaryFormat.writeObjects(stream, xmlObject);
+	}
 	public static void saveXMLPrimatives(OutputStream stream, Object[] objects) throws Exception {
 		if (objects == null || objects.length == 0) {
 			throw new Exception("Invalid object array.");
@@ -255,46 +367,79 @@ public final class XMLFileUtility {
 			stream.close();
 		}
 	}
-	public static void saveXMLObject(OutputStream stream, XMLObject obj) throws Exception {
-		saveXMLObjects(stream, new XMLObject[] { obj });
+	public static void saveXMLObject(OutputStream stream, Object obj) throws Exception {
+		saveXMLObjects(stream, new Object[] { obj });
 	}
-	public static void saveXMLObjects(OutputStream stream, XMLObject[] xmlObject) throws Exception {
+	/** Saves XMLObject implementations, or any objects with a registered or generated XMLAdapter */
+	public static void saveXMLObjects(OutputStream stream, Object[] xmlObject) throws Exception {
 		if (xmlObject == null || xmlObject.length == 0) {
 			throw new Exception("Invalid object array.");
 		} else {
 			String DTDInfo = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
 			String openTag = "<SavedObjects class=\"" + xmlObject[0].getClass().getName() + "\">\n";
-			String closeTag = "</SavedObjects>";
-			String child;
-			String childInfo;
-			String childType;
-			Object[] childNodes;
-			String[] nodeNames;
+			String closeTag = CLOSE_TAG;
 			stream.write(DTDInfo.getBytes(), 0, DTDInfo.length());
 			stream.write(openTag.getBytes(), 0, openTag.length());
-			for (int i = 0; i < xmlObject.length; i++) {
-				if (xmlObject[i] == null) {
-					logger.log(Level.INFO, "Skipped writing null object.");
-					continue;
-				}
-				child = xmlObject[i].getClass().getSimpleName();
-				childInfo = "\t<object class=\"" + child + "\">\n";
-				for (int p = 0; p < xmlObject[i].getPropertyCount(); p++) {
-					String nodeName = xmlObject[i].getPropertyName(p);
-					Object nodeValue = xmlObject[i].getProperty(nodeName);
-					if (nodeValue != null) {
-						childInfo = childInfo + "\t\t<param name=\"" + nodeName + "\" class=\"" + nodeValue.getClass().getSimpleName() + "\">" + encode(nodeValue) + "</param>\n";
-					} else {
-						logger.log(Level.INFO, "Skipped writing null parameter: " + nodeName);
-					}
-				}
-				childInfo = childInfo + "\t</object>\n";
-				stream.write(childInfo.getBytes(), 0, childInfo.length());
-			}
+			writeObjectEntries(stream, xmlObject);
 			stream.write(closeTag.getBytes(), 0, closeTag.length());
 			stream.close();
 		}
 	}
+	// Writes the <object> entries only, shared by full saves and appends to an existing file
+	static void writeObjectEntries(OutputStream stream, Object[] xmlObject) throws IOException {
+		String child;
+		String childInfo;
+		for (int i = 0; i < xmlObject.length; i++) {
+			if (xmlObject[i] == null) {
+				logger.log(Level.INFO, "Skipped writing null object.");
+				continue;
+			}
+			XMLAdapter<Object> adapter = getAdapter(xmlObject[i].getClass());
+			XMLObject obj = (adapter == null) ? asXMLObject(xmlObject[i]) : null;
+			int count = (adapter != null) ? adapter.getPropertyCount() : obj.getPropertyCount();
+			child = xmlObject[i].getClass().getSimpleName();
+			childInfo = "\t<object class=\"" + child + "\">\n";
+			for (int p = 0; p < count; p++) {
+				String nodeName = (adapter != null) ? adapter.getPropertyName(p) : obj.getPropertyName(p);
+				Object nodeValue = (adapter != null) ? adapter.getProperty(xmlObject[i], nodeName) : obj.getProperty(nodeName);
+				if (nodeValue != null) {
+					childInfo = childInfo + "\t\t<param name=\"" + nodeName + "\" class=\"" + nodeValue.getClass().getSimpleName() + "\">" + encode(nodeValue) + "</param>\n";
+				} else {
+					logger.log(Level.INFO, "Skipped writing null parameter: " + nodeName);
+				}
+			}
+			childInfo = childInfo + "\t</object>\n";
+			stream.write(childInfo.getBytes(), 0, childInfo.length());
+		}
+	}
+	// Objects without an adapter are saved through their own XMLObject methods
+	static XMLObject asXMLObject(Object obj) throws IOException {
+		if (obj instanceof XMLObject) {
+			return (XMLObject)obj;
+		}
+		throw new IOException("Unable to save " + obj.getClass().getName() + ", it neither implements XMLObject nor has an XMLAdapter.");
+	}
+	// Reverses encode for text read outside of the xml parser
+	static String decode(String text) {
+		if (text.indexOf('&') < 0) {
+			return text;
+		}
+		StringBuilder result = new StringBuilder(text.length());
+		int c = 0;
+		while (c < text.length()) {
+			char ch = text.charAt(c);
+			int end = (ch == '&') ? text.indexOf(';', c) : -1;
+			Integer decoded = (end > 0) ? entityMap.get(text.substring(c, end + 1)) : null;
+			if (decoded != null) {
+				result.append((char)decoded.intValue());
+				c = end + 1;
+			} else {
+				result.append(ch);
+				c++;
+			}
+		}
+		return result.toString();
+	}
 	private static String encode(Object obj) {
 		String input = obj.toString();
 		String result = "";
@@ -323,54 +468,102 @@ public final class XMLFileUtility {
 		}
 		return classes;
 	}
+	public static void registerConverter(Class<?> cls, Converter converter) {
+		converters.put(cls, converter);
+	}
+	public static Converter getConverter(Class<?> cls) {
+		return converters.get(cls);
+	}
+	/** Converts the value to the requested class using the registered converters, enums are resolved by constant name */
+	@SuppressWarnings("unchecked")
 	public static Object formatAs(Object obj, Class cls) throws Exception {
 		if (cls.isInstance(obj)) {
 			return obj;
-		} else if (cls.equals(String.class)) {
-			return (obj != null) ? obj.toString() : "";
-		} else if (cls.equals(Double.TYPE) || cls.equals(Double.class)) {
-			return (obj != null) ? Double.valueOf(obj.toString()) : 0.0;
-		} else if (cls.equals(Float.TYPE) || cls.equals(Float.class)) {
-			return (obj != null) ? Float.valueOf(obj.toString()) : 0.0f;
-		} else if (cls.equals(Long.TYPE) || cls.equals(Long.class)) {
-			return (obj != null) ? Long.valueOf(obj.toString()) : 0L;
-		} else if (cls.equals(Integer.TYPE) || cls.equals(Integer.class)) {
-			return (obj != null) ? Integer.valueOf(obj.toString()) : 0;
-		} else if (cls.equals(Short.TYPE) || cls.equals(Short.class)) {
-			return (obj != null) ? Short.valueOf(obj.toString()) : (short)0;
-		} else if (cls.equals(Byte.TYPE) || cls.equals(Byte.class)) {
-			return (obj != null) ? Byte.valueOf(obj.toString()) : (byte)0;
-		} else if (cls.equals(Boolean.TYPE) || cls.equals(Boolean.class)) {
-			return (obj != null) ? new Boolean(obj.toString()) : false;
-		} else if (cls.equals(Class.forName("java.sql.Date"))) {
-			return java.sql.Date.valueOf(obj.toString());
-		} else if (cls.equals(Class.forName("java.util.Date"))) {
-			return CustomDateFormat.getDate(obj.toString());
-		} else if (cls.equals(Class.forName("java.awt.Color"))) {
-			String val = obj.toString();
-			int r = 0;
-			int g = 0;
-			int b = 0;
-			int s = val.indexOf("r=");
-			if(s > 0) {
-				int e = val.indexOf(",", s);
-				r = Integer.valueOf(val.substring(s + 2, e));
-				s = val.indexOf("g=");
-				e = val.indexOf(",", s);
-				g = Integer.valueOf(val.substring(s + 2, e));
-				s = val.indexOf("b=");
-				e = val.indexOf("]", s);
-				b = Integer.valueOf(val.substring(s + 2, e));
+		}
+		Converter converter = converters.get(cls);
+		if (converter == null) {
+			if (!cls.isEnum()) {
+				return null;
 			}
-			return new Color(r, g, b);
-		} else if (cls.equals(Class.forName("java.util.HashMap"))) {
-			String[] entries = obj.toString().replace("{", "").replace("}", "").split(",");
-			for (String e : entries) {
-				String[] parts = e.trim().split("=");
+			converter = new EnumConverter(cls);
+			converters.putIfAbsent(cls, converter);
+		}
+		return converter.convert(obj);
+	}
+	
+	private static class BasicConverter implements Converter {
+		private final int type;
+		public BasicConverter(int type) {
+			this.type = type;
+		}
+		public Object convert(Object obj) throws Exception {
+			if (obj == null) {
+				switch (type) {
+					case STRING: return "";
+					case DOUBLE: return 0.0;
+					case FLOAT: return 0.0f;
+					case LONG: return 0L;
+					case INTEGER: return 0;
+					case SHORT: return (short)0;
+					case BYTE: return (byte)0;
+					case BOOLEAN: return false;
+					default: return null;
+				}
+			}
+			switch (type) {
+				case STRING: return obj.toString();
+				case DOUBLE: return Double.valueOf(obj.toString());
+				case FLOAT: return Float.valueOf(obj.toString());
+				case LONG: return Long.valueOf(obj.toString());
+				case INTEGER: return Integer.valueOf(obj.toString());
+				case SHORT: return Short.valueOf(obj.toString());
+				case BYTE: return Byte.valueOf(obj.toString());
+				case BOOLEAN: return Boolean.valueOf(obj.toString());
+				case SQL_DATE: return java.sql.Date.valueOf(obj.toString());
+				case DATE: return CustomDateFormat.getDate(obj.toString());
+				case COLOR: return parseColor(obj.toString());
+				case HASHMAP: return parseMap(obj.toString());
+				default: return null;
+			}
+		}
+	}
+	private static class EnumConverter implements Converter {
+		private final Class<? extends Enum> cls;
+		public EnumConverter(Class<? extends Enum> cls) {
+			this.cls = cls;
+		}
+		@SuppressWarnings("unchecked")
+		public Object convert(Object obj) throws Exception {
+			return (obj != null) ? Enum.valueOf(cls, obj.toString().trim()) : null;
+		}
+	}
+	private static Color parseColor(String val) {
+		int r = 0;
+		int g = 0;
+		int b = 0;
+		int s = val.indexOf("r=");
+		if(s > 0) {
+			int e = val.indexOf(",", s);
+			r = Integer.valueOf(val.substring(s + 2, e));
+			s = val.indexOf("g=");
+			e = val.indexOf(",", s);
+			g = Integer.valueOf(val.substring(s + 2, e));
+			s = val.indexOf("b=");
+			e = val.indexOf("]", s);
+			b = Integer.valueOf(val.substring(s + 2, e));
+		}
+		return new Color(r, g, b);
+	}
+	// Reads the HashMap.toString form back as string keys and values
+	private static HashMap<String, String> parseMap(String val) {
+		HashMap<String, String> map = new HashMap<String, String>();
+		String[] entries = val.replace("{", "").replace("}", "").split(",");
+		for (String e : entries) {
+			int split = e.indexOf('=');
+			if (split > 0) {
+				map.put(e.substring(0, split).trim(), e.substring(split + 1).trim());
 			}
-			return null;
-		} else {
-			return null;
 		}
+		return map;
 	}
-}
\ No newline at end of file
+}
@@ -22,12 +22,25 @@
  */
 package com.stp.util;
 public class XMLProperty {
+	private static final int BYTE = 1;
+	private static final int SHORT = 2;
+	private static final int INT = 3;
+	private static final int LONG = 4;
+	private static final int DOUBLE = 5;
+	private static final int BOOLEAN = 6;
+	
 	private String key = "";
 	private Object value = null;
+	// The value unboxed once when it is set, so typed reads do not unbox. The type flag records the boxed class the
+	// value was given as, each typed read only accepts its own class just as the instanceof checks it replaces did.
+	private int type = 0;
+	private long longValue = 0L;
+	private double doubleValue = 0.0;
 
 	public XMLProperty(String key, Object value) {
 		this.key = key;
 		this.value = value;
+		convert();
 	}
 	public String getKey() {
 		return key;
@@ -37,6 +50,66 @@ public class XMLProperty {
 	}
 	public void setValue(Object value) {
 		this.value = value;
+		convert();
+	}
+	public boolean hasByte() {
+		return type == BYTE;
+	}
+	public boolean hasShort() {
+		return type == SHORT;
+	}
+	public boolean hasInt() {
+		return type == INT;
+	}
+	public boolean hasLong() {
+		return type == LONG;
+	}
+	/** True for Double and Float values */
+	public boolean hasDouble() {
+		return type == DOUBLE;
+	}
+	public boolean hasBoolean() {
+		return type == BOOLEAN;
+	}
+	public byte getByte() {
+		return (byte)longValue;
+	}
+	public short getShort() {
+		return (short)longValue;
+	}
+	public int getInt() {
+		return (int)longValue;
+	}
+	public long getLong() {
+		return longValue;
+	}
+	public double getDouble() {
+		return doubleValue;
+	}
+	public boolean getBoolean() {
+		return longValue != 0L;
+	}
+	private void convert() {
+		type = 0;
+		if (value instanceof Integer) {
+			setLong(INT, (Integer)value);
+		} else if (value instanceof Long) {
+			setLong(LONG, (Long)value);
+		} else if (value instanceof Short) {
+			setLong(SHORT, (Short)value);
+		} else if (value instanceof Byte) {
+			setLong(BYTE, (Byte)value);
+		} else if (value instanceof Boolean) {
+			setLong(BOOLEAN, ((Boolean)value) ? 1L : 0L);
+		} else if (value instanceof Double || value instanceof Float) {
+			type = DOUBLE;
+			doubleValue = ((Number)value).doubleValue();
+		}
+	}
+	private void setLong(int type, long number) {
+		this.type = type;
+		longValue = number;
+		doubleValue = number;
 	}
 	@Override
 	public boolean equals(Object other) {
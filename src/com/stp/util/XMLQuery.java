@@ -0,0 +1,209 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a streaming filter that selects objects from a save file without loading all of them ~ 10/19/2026
+ *
+ *  Conditions are tested against the param text as each element streams past. Once an object fails a condition
+ *  the rest of its params are skipped without reading their text, and objects are only created for matches.
+ */
+public class XMLQuery {
+	private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+	
+	/** Tests the text of a param, value is null when the object does not contain the property */
+	public interface Condition {
+		public abstract boolean matches(String value);
+	}
+	/** Receives each matching object in file order, return false to stop reading */
+	public interface Listener {
+		public abstract boolean objectFound(Object object);
+	}
+	
+	private static class EqualsCondition implements Condition {
+		private final String expected;
+		public EqualsCondition(String expected) {
+			this.expected = expected;
+		}
+		public boolean matches(String value) {
+			return expected.equals(value);
+		}
+	}
+	
+	private final ArrayList<String> conditionNames = new ArrayList<String>();
+	private final ArrayList<Condition> conditions = new ArrayList<Condition>();
+	private Set<String> properties = null;
+	
+	public XMLQuery() {
+	}
+	/** Matches objects whose property has exactly the given text, as it would be written to the save file */
+	public void addCondition(String property, Object value) {
+		addCondition(property, new EqualsCondition(value.toString()));
+	}
+	public void addCondition(String property, Condition condition) {
+		conditionNames.add(property);
+		conditions.add(condition);
+	}
+	/** Limits the properties set on the returned objects, null loads every property */
+	public void setProperties(String[] names) {
+		properties = (names != null) ? new HashSet<String>(Arrays.asList(names)) : null;
+	}
+	/** Returns an array of the save file's object class holding only the matching objects */
+	public Object execute(InputStream stream) throws Exception {
+		final ArrayList<Object> results = new ArrayList<Object>();
+		Class<?> objClass = run(stream, new Listener() {
+			public boolean objectFound(Object object) {
+				results.add(object);
+				return true;
+			}
+		});
+		Object matches = Array.newInstance((objClass != null) ? objClass : Object.class, results.size());
+		for (int r = 0; r < results.size(); r++) {
+			Array.set(matches, r, results.get(r));
+		}
+		return matches;
+	}
+	public void execute(InputStream stream, Listener listener) throws Exception {
+		run(stream, listener);
+	}
+	private Class<?> run(InputStream stream, Listener listener) throws Exception {
+		if (!stream.markSupported()) {
+			stream = new BufferedInputStream(stream);
+		}
+		if (XMLBinaryFormat.isBinary(stream)) {
+			return filterLoaded(XMLFileUtility.readXMLObjects(stream), listener);
+		}
+		int conditionCount = conditions.size();
+		String[] names = new String[16];
+		String[] classes = new String[16];
+		String[] texts = new String[16];
+		boolean[] tested = new boolean[conditionCount];
+		int count = 0;
+		boolean rejected = false;
+		Class<?> objClass = null;
+		XMLAdapter<Object> adapter = null;
+		XMLStreamReader reader = factory.createXMLStreamReader(stream);
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String tag = reader.getLocalName();
+					if (tag.equals("param")) {
+						if (rejected) {
+							continue;
+						}
+						String name = reader.getAttributeValue(null, "name");
+						boolean keep = (properties == null || properties.contains(name));
+						int condition = conditionNames.indexOf(name);
+						if (!keep && condition < 0) {
+							continue;
+						}
+						String className = reader.getAttributeValue(null, "class");
+						String text = reader.getElementText();
+						while (condition >= 0) {
+							tested[condition] = true;
+							if (!conditions.get(condition).matches(text)) {
+								rejected = true;
+								break;
+							}
+							condition = nextCondition(name, condition);
+						}
+						if (keep && !rejected) {
+							if (count == names.length) {
+								names = Arrays.copyOf(names, count * 2);
+								classes = Arrays.copyOf(classes, count * 2);
+								texts = Arrays.copyOf(texts, count * 2);
+							}
+							names[count] = name;
+							classes[count] = className;
+							texts[count] = text;
+							count++;
+						}
+					} else if (tag.equals("object")) {
+						Arrays.fill(tested, false);
+						count = 0;
+						rejected = false;
+					} else if (tag.equals("SavedObjects")) {
+						objClass = Class.forName(reader.getAttributeValue(null, "class"));
+						adapter = XMLFileUtility.getAdapter(objClass);
+						if (adapter == null && !XMLObject.class.isAssignableFrom(objClass)) {
+							throw new Exception("Queries require XMLObject saves: " + objClass);
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("object")) {
+					for (int c = 0; c < conditionCount && !rejected; c++) {
+						rejected = !tested[c] && !conditions.get(c).matches(null);
+					}
+					if (rejected) {
+						continue;
+					}
+					Object object = (adapter != null) ? adapter.newInstance() : objClass.newInstance();
+					for (int p = 0; p < count; p++) {
+						XMLFileUtility.setProperty(object, adapter, names[p], texts[p], classes[p]);
+					}
+					if (!listener.objectFound(object)) {
+						break;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return objClass;
+	}
+	private int nextCondition(String name, int from) {
+		for (int c = from + 1; c < conditionNames.size(); c++) {
+			if (conditionNames.get(c).equals(name)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+	// Binary saves have no text to stream over, so they are loaded and the conditions applied to each value's text
+	private Class<?> filterLoaded(Object loaded, Listener listener) {
+		XMLAdapter<Object> adapter = XMLFileUtility.getAdapter(loaded.getClass().getComponentType());
+		for (int i = 0; i < Array.getLength(loaded); i++) {
+			Object object = Array.get(loaded, i);
+			boolean match = true;
+			for (int c = 0; c < conditions.size() && match; c++) {
+				Object value = (adapter != null) ? adapter.getProperty(object, conditionNames.get(c)) : ((XMLObject)object).getProperty(conditionNames.get(c));
+				match = conditions.get(c).matches((value != null) ? value.toString() : null);
+			}
+			if (match && !listener.objectFound(object)) {
+				break;
+			}
+		}
+		return loaded.getClass().getComponentType();
+	}
+}
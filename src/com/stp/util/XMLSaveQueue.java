@@ -0,0 +1,130 @@
+/* MIT License
+ *
+ * Copyright (c) 2018 Paul Collins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.stp.util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** @author Paul Collins
+ *  @version v1.0 ~ 10/19/2026
+ *  HISTORY: Version 1.0 created a write-behind queue that saves xml files on a background thread ~ 10/19/2026
+ *
+ *  Each save request replaces any request still waiting for the same file, so a burst of edits results in a
+ *  single write of the latest objects once the delay has passed. Objects are written as they are when the save
+ *  runs, not when it was requested. The worker is a daemon thread, so call flush or shutdown before exiting.
+ */
+public class XMLSaveQueue {
+	private static final Logger logger = Logger.getLogger(XMLSaveQueue.class.getName());
+	
+	private final ConcurrentHashMap<File, Object[]> pending = new ConcurrentHashMap<File, Object[]>();
+	private final ScheduledExecutorService writer;
+	private final long delay;
+	private volatile boolean binary = false;
+	
+	public XMLSaveQueue(long delayMillis) {
+		this.delay = Math.max(0, delayMillis);
+		this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "XMLSaveQueue");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	/** Writes the compact binary format instead of xml text */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+	public long getDelay() {
+		return delay;
+	}
+	public int getPendingCount() {
+		return pending.size();
+	}
+	/** Queues the objects to be written to the file after the delay, replacing any save still waiting for it.
+	 *  Throws RejectedExecutionException once the queue has been shut down.
+	 */
+	public void save(File file, Object[] objects) {
+		if (writer.isShutdown()) {
+			throw new RejectedExecutionException("XMLSaveQueue has been shut down.");
+		}
+		File target = file.getAbsoluteFile();
+		if (pending.put(target, objects) == null) {
+			try {
+				writer.schedule(new SaveTask(target), delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException ex) {
+				// shut down after the check above, nothing will ever write this entry
+				pending.remove(target, objects);
+				throw ex;
+			}
+		}
+	}
+	/** Writes every waiting save now and blocks until they are on disk */
+	public void flush() throws InterruptedException {
+		try {
+			writer.submit(new Runnable() {
+				public void run() {
+					for (File file : new ArrayList<File>(pending.keySet())) {
+						write(file);
+					}
+				}
+			}).get();
+		} catch (ExecutionException ex) {
+			logger.log(Level.WARNING, "Failed to flush pending saves: " + ex.getCause());
+		}
+	}
+	/** Flushes waiting saves and stops the worker, later save requests are rejected */
+	public void shutdown() throws InterruptedException {
+		flush();
+		writer.shutdown();
+		writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+	private void write(File file) {
+		Object[] objects = pending.remove(file);
+		if (objects == null) {
+			return;
+		}
+		boolean saved = binary ? JavaIO.saveBinary(file, objects) : JavaIO.saveXML(file, objects);
+		if (!saved) {
+			logger.log(Level.WARNING, "Background save failed: " + file);
+		}
+	}
+	
+	private class SaveTask implements Runnable {
+		private final File file;
+		public SaveTask(File file) {
+			this.file = file;
+		}
+		public void run() {
+			write(file);
+		}
+	}
+}